@@ -0,0 +1,217 @@
+package com.cornellsatech.o_week;
+
+import android.content.Context;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.models.VersionUpdate;
+import com.cornellsatech.o_week.util.EventSnapshot;
+import com.cornellsatech.o_week.util.NotificationCenter;
+import com.cornellsatech.o_week.util.Settings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges an update into {@link UserData} while it's being downloaded. Records are decoded on the download
+ * thread and handed over in batches of {@link #BATCH_SIZE}: each batch is merged into
+ * {@link UserData#allEvents} on the main thread, which owns it, and appended to the journal on the disk
+ * thread. So at most a batch of records is held before it's merged, and the main thread never merges
+ * more than a batch at a time. Everything depending on the events is updated and notified with each
+ * batch by {@link UserData#applyBatch}. Once the download ends, {@link #finish(long)} saves categories,
+ * reschedules reminders and alerts the user.
+ *
+ * {@link #categoryMerger}: Collects changes to categories. Only accessed on the main thread.
+ * {@link #changedEventNames}: Names of every event changed or deleted so far, keyed by pk. Only accessed
+ *                             on the main thread.
+ * {@link #selectedChanged}: True once a batch changed a selected event. Only accessed on the main thread.
+ * {@link #selectedEventsPks}: Pks of events the user had selected when the update started.
+ * {@link #changedEvents}, {@link #deletedPks}: Records of the batch being decoded. Only accessed on the
+ *                                             download thread, until it ends.
+ * {@link #journaled}: False once a batch couldn't be saved. Only accessed on the disk thread.
+ * {@link #discarded}: True if the journal was discarded after a batch couldn't be saved.
+ */
+final class CatalogUpdate implements VersionUpdate.Listener
+{
+	private static final int BATCH_SIZE = 32;
+	private final Context context;
+	private final EventMerger categoryMerger;
+	private final Map<String, String> changedEventNames = new HashMap<>();
+	private boolean selectedChanged = false;
+	private final Set<String> selectedEventsPks = new HashSet<>();
+	private List<Event> changedEvents = new ArrayList<>(BATCH_SIZE);
+	private List<String> deletedPks = new ArrayList<>();
+	private boolean journaled = true;
+	private boolean discarded = false;
+
+	/**
+	 * Must be created on the main thread, once {@link UserData#isLoaded()}.
+	 */
+	@MainThread
+	CatalogUpdate(Context context)
+	{
+		this.context = context.getApplicationContext();
+		categoryMerger = new EventMerger(UserData.allEvents, UserData.categories);
+		for (Event event : UserData.selectedEvents)
+			selectedEventsPks.add(event.getPk());
+	}
+
+	@Override
+	@WorkerThread
+	public void changedEvent(Event event)
+	{
+		changedEvents.add(event);
+		if (changedEvents.size() >= BATCH_SIZE)
+			flush();
+	}
+
+	@Override
+	@WorkerThread
+	public void deletedEvent(String pk)
+	{
+		deletedPks.add(pk);
+		if (deletedPks.size() >= BATCH_SIZE)
+			flush();
+	}
+
+	/**
+	 * Categories are few and small, so each is merged as it's decoded. They're saved and posted by
+	 * {@link UserData#finishUpdate}.
+	 */
+	@Override
+	@WorkerThread
+	public void changedCategory(final Category category)
+	{
+		DataBootstrap.runOnMainThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				categoryMerger.changedCategory(category);
+			}
+		});
+	}
+
+	@Override
+	@WorkerThread
+	public void deletedCategory(final String pk)
+	{
+		DataBootstrap.runOnMainThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				categoryMerger.deletedCategory(pk);
+			}
+		});
+	}
+
+	/**
+	 * Merges the last batch, finishes the update, and saves the new timestamp once every batch
+	 * has been saved. Changes merged before a failed download are kept, but since the timestamp isn't
+	 * saved, they're downloaded again next time. Posts {@link NotificationCenter.EventInternetUpdate}
+	 * once the timestamp is saved.
+	 *
+	 * @param timestamp Version of the database the update brings the events to, or 0 if the download failed.
+	 */
+	@MainThread
+	void finish(final long timestamp)
+	{
+		//batches decoded earlier were posted before the download ended, so they've been merged by now
+		merge(changedEvents, deletedPks);
+		journal(changedEvents, deletedPks);
+		UserData.finishUpdate(context, categoryMerger.finish(), changedEventNames, selectedChanged, selectedEventsPks);
+		DataBootstrap.runOnDiskThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				//everything must be downloaded again
+				if (discarded)
+					Settings.setTimestamp(0, context);
+				else if (journaled && timestamp != 0)
+					Settings.setTimestamp(timestamp, context);
+				DataBootstrap.runOnMainThread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						NotificationCenter.DEFAULT.post(new NotificationCenter.EventInternetUpdate());
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Hands the current batch to the main thread to merge and the disk thread to save.
+	 */
+	@WorkerThread
+	private void flush()
+	{
+		final List<Event> changed = changedEvents;
+		final List<String> deleted = deletedPks;
+		changedEvents = new ArrayList<>(BATCH_SIZE);
+		deletedPks = new ArrayList<>();
+
+		DataBootstrap.runOnMainThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				merge(changed, deleted);
+			}
+		});
+		journal(changed, deleted);
+	}
+
+	/**
+	 * Merges the batch into the current {@link UserData#allEvents}, then updates everything depending on it.
+	 */
+	@MainThread
+	private void merge(List<Event> changed, List<String> deleted)
+	{
+		EventMerger merger = new EventMerger(UserData.allEvents, UserData.categories);
+		for (Event event : changed)
+			merger.changedEvent(event);
+		for (String pk : deleted)
+			merger.deletedEvent(pk);
+		EventDiff diff = merger.finish();
+		for (Event event : diff.getChangedEvents())
+			changedEventNames.put(event.getPk(), event.getName());
+		for (Event event : diff.getDeletedEvents())
+			changedEventNames.put(event.getPk(), event.getName());
+		selectedChanged |= UserData.applyBatch(diff);
+	}
+
+	/**
+	 * Appends the records to the journal on the disk thread. The decoded records are saved rather than
+	 * what was merged, so deleting an event that was already removed is saved too.
+	 */
+	private void journal(final List<Event> changed, final List<String> deleted)
+	{
+		if (changed.isEmpty() && deleted.isEmpty())
+			return;
+		DataBootstrap.runOnDiskThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (!journaled)
+					return;
+				if (!EventSnapshot.append(context, changed, deleted))
+				{
+					journaled = false;
+					discarded = !EventSnapshot.exists(context);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,102 @@
+package com.cornellsatech.o_week;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.util.EventSnapshot;
+import com.cornellsatech.o_week.util.NotificationCenter;
+import com.cornellsatech.o_week.util.Settings;
+
+import org.joda.time.LocalDate;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads everything {@link UserData} needs from disk on a background thread, so that app startup
+ * doesn't wait on parsing every event. Loading happens in 2 stages:
+ * 1. Preview: Every date and the events of today (or the first date), enough to draw the first page.
+ * 2. Catalog: Every event and category, indexed (including for search) off the main thread.
+ * The results of each stage are handed to {@link UserData} on the main thread, which then posts
+ * {@link NotificationCenter.EventDataReady}.
+ *
+ * {@link #EXECUTOR}: Single thread, so stages never run out of order, even if loading is restarted.
+ *                    All other event files are written on it too, so reads and writes never overlap.
+ */
+final class DataBootstrap
+{
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+	private static final String TAG = DataBootstrap.class.getSimpleName();
+
+	//suppress instantiation
+	private DataBootstrap(){}
+
+	/**
+	 * Runs the task on the same thread that reads events from disk.
+	 * @param task Task that reads or writes event files.
+	 */
+	static void runOnDiskThread(Runnable task)
+	{
+		EXECUTOR.execute(task);
+	}
+
+	static void runOnMainThread(Runnable task)
+	{
+		MAIN_HANDLER.post(task);
+	}
+
+	/**
+	 * Starts loading data. The preview stage is skipped if all events have been loaded before.
+	 * Must be called on the main thread.
+	 */
+	static void start(Context context)
+	{
+		final Context appContext = context.getApplicationContext();
+		final boolean loadPreview = !UserData.isLoaded();
+		EXECUTOR.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final Set<String> selectedEventsPks = new HashSet<>(Settings.getSelectedEventsPks(appContext));
+
+				if (loadPreview)
+				{
+					final EventSnapshot.Preview preview = EventSnapshot.readPreview(appContext, LocalDate.now());
+					if (preview != null)
+					{
+						MAIN_HANDLER.post(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								UserData.loadPreview(appContext, preview, selectedEventsPks);
+							}
+						});
+					}
+				}
+
+				final EventStore events = new EventStore(Settings.getAllEvents(appContext));
+				final SearchIndex index = new SearchIndex(events);
+				final Set<Category> categories = Settings.getCategories(appContext);
+				final Map<String, String> resources = Settings.getResources(appContext);
+				Log.i(TAG, "Loaded " + events.size() + " events in the background");
+				MAIN_HANDLER.post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						UserData.loadCatalog(appContext, events, index, categories, resources, selectedEventsPks);
+					}
+				});
+			}
+		});
+	}
+}
@@ -69,7 +69,7 @@ public class DateCell extends RecyclerView.ViewHolder implements View.OnClickLis
 			return;
 		setClick();
 		UserData.selectedDate = date;
-		NotificationCenter.DEFAULT.post(new NotificationCenter.EventDateChanged());
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventDateChanged(date));
 	}
 
 	/**
@@ -17,10 +17,12 @@ import androidx.fragment.app.Fragment;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.CategoryIds;
+import com.cornellsatech.o_week.util.Callback;
 import com.cornellsatech.o_week.util.NotificationCenter;
-import com.google.common.eventbus.Subscribe;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 
@@ -81,15 +83,46 @@ public class DatePagerFragment extends Fragment
 		datePager = view.findViewById(R.id.viewPager);
 		setDatePagerAdapter();
 		//trigger a call to onDateChanged so this fragment starts out with the correct date
-		onDateChanged(null);
+		onDateChanged();
 
 		if (type == DatePagerAdapter.Type.Feed)
 			setHasOptionsMenu(true);
-
-		NotificationCenter.DEFAULT.register(this);
 		return view;
 	}
 
+	/**
+	 * Listen for notifications until the view is destroyed.
+	 */
+	@Override
+	public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState)
+	{
+		super.onViewCreated(view, savedInstanceState);
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady eventDataReady)
+			{
+				onDataReady(eventDataReady);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventCatalogChanged.class, new Callback<NotificationCenter.EventCatalogChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventCatalogChanged eventCatalogChanged)
+			{
+				onCatalogChanged(eventCatalogChanged);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventDateChanged.class, new Callback<NotificationCenter.EventDateChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDateChanged eventDateChanged)
+			{
+				onDateChanged();
+			}
+		});
+	}
+
 	private void setDatePagerAdapter()
 	{
 		DatePagerAdapter adapter = new DatePagerAdapter(this, type);
@@ -104,21 +137,11 @@ public class DatePagerFragment extends Fragment
 			public void onPageSelected(int position)
 			{
 				UserData.selectedDate = UserData.sortedDates.get(position);
-				NotificationCenter.DEFAULT.post(new NotificationCenter.EventDateChanged());
+				NotificationCenter.DEFAULT.post(new NotificationCenter.EventDateChanged(UserData.selectedDate));
 			}
 		});
 	}
 
-	/**
-	 * Unregister ourselves as a listener.
-	 */
-	@Override
-	public void onDestroyView()
-	{
-		super.onDestroyView();
-		NotificationCenter.DEFAULT.unregister(this);
-	}
-
 	@Override
 	public void onCreateOptionsMenu(@NonNull Menu menu, @NonNull MenuInflater inflater)
 	{
@@ -161,17 +184,18 @@ public class DatePagerFragment extends Fragment
 			@Override
 			public void onClick(DialogInterface dialogInterface, int index, boolean b)
 			{
+				BitSet flipped = new BitSet();
 				//row 0 is reserved for "required events"
 				if (index == 0)
 					UserData.filterRequired = !UserData.filterRequired;
 				else
 				{
-					String categoryPk = categories.get(index - 1).getPk();
-					if (!UserData.selectedFilters.remove(categoryPk))
-						UserData.selectedFilters.add(categoryPk);
+					int categoryId = CategoryIds.idOf(categories.get(index - 1).getPk());
+					UserData.selectedFilters.flip(categoryId);
+					flipped.set(categoryId);
 				}
 
-				NotificationCenter.DEFAULT.post(new NotificationCenter.EventFilterChanged());
+				NotificationCenter.DEFAULT.post(new NotificationCenter.EventFilterChanged(flipped, index == 0));
 				updateFilterIcon();
 			}
 		});
@@ -181,8 +205,10 @@ public class DatePagerFragment extends Fragment
 			@Override
 			public void onClick(DialogInterface dialogInterface, int i)
 			{
+				NotificationCenter.EventFilterChanged change = new NotificationCenter.EventFilterChanged(
+						(BitSet) UserData.selectedFilters.clone(), UserData.filterRequired);
 				clearFilters();
-				NotificationCenter.DEFAULT.post(new NotificationCenter.EventFilterChanged());
+				NotificationCenter.DEFAULT.post(change);
 				updateFilterIcon();
 			}
 		});
@@ -206,7 +232,7 @@ public class DatePagerFragment extends Fragment
 		{
 			Category category = categories.get(i - 1);
 			filters[i] = category.getCategory();
-			checkedFilters[i] = UserData.selectedFilters.contains(category.getPk());
+			checkedFilters[i] = UserData.selectedFilters.get(CategoryIds.idOf(category.getPk()));
 		}
 
 		this.filters = filters;
@@ -234,21 +260,36 @@ public class DatePagerFragment extends Fragment
 	}
 
 	/**
-	 * Refresh dates shown in pager and selected date.
+	 * Show dates loaded from disk. The pager is only rebuilt if the number of dates changed, since the
+	 * preview and the full catalog are read from the same snapshot.
 	 */
-	@Subscribe
-	public void onInternetUpdate(NotificationCenter.EventInternetUpdate eventNewDates)
+	private void onDataReady(NotificationCenter.EventDataReady eventDataReady)
 	{
+		if (datePager.getAdapter() == null || datePager.getAdapter().getItemCount() != UserData.sortedDates.size())
+			setDatePagerAdapter();
+		if (eventDataReady.complete)
+			cacheCategories();
+		onDateChanged();
+	}
+
+	/**
+	 * Refresh dates shown in pager and selected date if dates were added or removed, and the categories
+	 * shown in the filter if they changed.
+	 */
+	private void onCatalogChanged(NotificationCenter.EventCatalogChanged eventCatalogChanged)
+	{
+		if (eventCatalogChanged.diff.isCategoriesChanged())
+			cacheCategories();
+		if (!eventCatalogChanged.diff.isDatesChanged())
+			return;
 		setDatePagerAdapter();
-		cacheCategories();
-		onDateChanged(null); // refresh selected date too
+		onDateChanged(); // refresh selected date too
 	}
 
 	/**
-	 * Flip the page to the location of the new date.
+	 * Flip the page to the location of {@link UserData#selectedDate}.
 	 */
-	@Subscribe
-	public void onDateChanged(NotificationCenter.EventDateChanged event)
+	private void onDateChanged()
 	{
 		int position = UserData.sortedDates.indexOf(UserData.selectedDate);
 		if (position == -1)
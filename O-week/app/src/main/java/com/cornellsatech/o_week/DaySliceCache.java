@@ -0,0 +1,113 @@
+package com.cornellsatech.o_week;
+
+import androidx.annotation.MainThread;
+
+import com.cornellsatech.o_week.models.Event;
+import com.google.common.collect.ImmutableList;
+
+import org.joda.time.LocalDate;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Value;
+
+/**
+ * Caches the rows each {@link FeedAdapter} displays, so pages of the date pager that show the same date
+ * and filters share one list, and a filter change only filters each date once.
+ *
+ * A slice depends on {@link UserData#allEvents}, the filters, and the user's college and student type.
+ * Filters are part of the key, so changing them never returns stale rows. Everything else must be
+ * invalidated where it changes, before listeners are notified:
+ * 1. {@link UserData} clears all slices when events are loaded or the user's types change.
+ * 2. {@link UserData} invalidates the dates an update affected, before posting
+ *    {@link com.cornellsatech.o_week.util.NotificationCenter.EventCatalogChanged}.
+ *
+ * {@link #slices}: Rows for each key, least recently used first. Only accessed on the main thread.
+ */
+final class DaySliceCache
+{
+	private static final int MAX_SLICES = 32;
+	private static final Map<Key, List<FeedAdapter.Row>> slices = new LinkedHashMap<Key, List<FeedAdapter.Row>>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, List<FeedAdapter.Row>> eldest)
+		{
+			return size() > MAX_SLICES;
+		}
+	};
+
+	//suppress instantiation
+	private DaySliceCache(){}
+
+	@Value
+	private static class Key
+	{
+		private final LocalDate date;
+		private final BitSet filters;
+		private final boolean filterRequired;
+	}
+
+	/**
+	 * Returns the rows to display for the date, using the current filters.
+	 * @param date {@link Event#getStartDate()}
+	 * @return Immutable rows, sorted chronologically.
+	 */
+	@MainThread
+	static List<FeedAdapter.Row> get(LocalDate date)
+	{
+		Key key = new Key(date, (BitSet) UserData.selectedFilters.clone(), UserData.filterRequired);
+		List<FeedAdapter.Row> slice = slices.get(key);
+		if (slice == null)
+		{
+			slice = compute(key);
+			slices.put(key, slice);
+		}
+		return slice;
+	}
+
+	/**
+	 * Removes slices of the given dates, for every filter.
+	 */
+	@MainThread
+	static void invalidate(Collection<LocalDate> dates)
+	{
+		Iterator<Key> keys = slices.keySet().iterator();
+		while (keys.hasNext())
+			if (dates.contains(keys.next().getDate()))
+				keys.remove();
+	}
+
+	@MainThread
+	static void clear()
+	{
+		slices.clear();
+	}
+
+	/**
+	 * Removes all events that are not part of the given categories or required (if that option is
+	 * selected) from the events of the key's date. Checking categories is a single AND of bitsets.
+	 */
+	private static List<FeedAdapter.Row> compute(Key key)
+	{
+		List<Event> events = UserData.allEvents.eventsOnDate(key.getDate());
+		BitSet filters = key.getFilters();
+		boolean filtered = !filters.isEmpty() || key.isFilterRequired();
+		Set<Event> requiredEvents = UserData.requiredEventsForUser();
+
+		ImmutableList.Builder<FeedAdapter.Row> rows = ImmutableList.builder();
+		for (Event event : events)
+		{
+			boolean required = requiredEvents.contains(event);
+			if (filtered && !event.getCategoryBits().intersects(filters) && !(key.isFilterRequired() && required))
+				continue;
+			rows.add(new FeedAdapter.Row(event, required));
+		}
+		return rows.build();
+	}
+}
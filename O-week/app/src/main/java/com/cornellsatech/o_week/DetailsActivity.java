@@ -18,6 +18,8 @@ import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.content.ContextCompat;
 
 import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.util.Callback;
+import com.cornellsatech.o_week.util.EventSnapshot;
 import com.cornellsatech.o_week.util.Internet;
 import com.cornellsatech.o_week.util.NotificationCenter;
 import com.cornellsatech.o_week.util.Notifications;
@@ -28,21 +30,26 @@ import com.google.android.gms.maps.MapFragment;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Displays a user-selected event in a separate page. An {@link android.app.Activity} is used instead
  * of a Fragment since this page should have a back button.
  * <p>
- * {@link #EVENT_KEY}: See {@link #onCreate(Bundle)}.
- * {@link #event}: The event displayed to the user.
+ * {@link #EVENT_PK_KEY}: See {@link #onCreate(Bundle)}.
+ * {@link #event}: The event displayed to the user. Null until it's been found.
+ * {@link #LOOKUP_THREAD}: Reads single events from disk while events are still loading.
  * {@link #coordinatorLayout}: Layout that will be shouldActUpon to
- * {@link Internet#getImageForEvent(Event, ImageView, CoordinatorLayout)}.
+ * {@link Internet#getImageForEvent(Event, ImageView, CoordinatorLayout, androidx.lifecycle.LifecycleOwner)}.
  * A reference to the {@link CoordinatorLayout} is necessary to display
  * {@link com.google.android.material.snackbar.Snackbar}.
  */
 public class DetailsActivity extends AppCompatActivity implements OnMapReadyCallback, Button.OnClickListener
 {
-	public static final String EVENT_KEY = "event";
+	public static final String EVENT_PK_KEY = "eventPk";
 	private Event event;
 	private CoordinatorLayout coordinatorLayout;
 	private ImageView eventImage;
@@ -61,6 +68,8 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 	private Button directionsButton;
 
 	private static final String TAG = DetailsActivity.class.getSimpleName();
+	private static final ExecutorService LOOKUP_THREAD = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("event-lookup").setDaemon(true).build());
 	private static final int MAP_ZOOM = 16;
 	private static final int NUM_LINES_IN_CONDENSED_DESCRIPTION = 3;
 
@@ -70,16 +79,26 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 	 * @param context Context to start the activity in
 	 */
 	public static void startWithEvent(Event event, Context context)
+	{
+		context.startActivity(intentForEvent(event.getPk(), context));
+	}
+	/**
+	 * Returns an intent that opens {@link DetailsActivity} with the event. Only the pk is sent; the
+	 * event itself is looked up once the activity starts.
+	 *
+	 * @param pk {@link Event#getPk()} of the event to display.
+	 */
+	public static Intent intentForEvent(String pk, Context context)
 	{
 		Intent intent = new Intent(context, DetailsActivity.class);
-		intent.putExtra(DetailsActivity.EVENT_KEY, event.toString());
-		context.startActivity(intent);
+		intent.putExtra(EVENT_PK_KEY, pk);
+		return intent;
 	}
 	/**
-	 * Link to layout, add back button to toolbar, sets up views. Retrieves {@link #event} from the
-	 * bundle shouldActUpon in the parameter, which contains a String that describes an Event.
+	 * Link to layout, add back button to toolbar, sets up views. Retrieves {@link #event} using the pk
+	 * in the intent, first from {@link UserData#allEvents}, then from disk if events are still loading.
 	 *
-	 * @param savedInstanceState Contains a String that is the event to display.
+	 * @param savedInstanceState Ignored.
 	 */
 	@Override
 	protected void onCreate(Bundle savedInstanceState)
@@ -92,11 +111,94 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 		//set back button
 		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
+		findViews();
+
 		//get the event
-		event = Event.fromJSON(getIntent().getExtras().getString(EVENT_KEY));
+		String pk = getIntent().getStringExtra(EVENT_PK_KEY);
+		if (pk == null)
+		{
+			Log.e(TAG, "onCreate: no pk, should be set by whomever opened this activity");
+			finish();
+			return;
+		}
+		Event storedEvent = UserData.allEvents.get(pk);
+		if (storedEvent != null)
+			showEvent(storedEvent);
+		else if (UserData.isLoaded())
+		{
+			//deleted in an update since the intent was created
+			Log.e(TAG, "onCreate: event " + pk + " not found");
+			finish();
+		}
+		else
+			loadEvent(pk);
+	}
 
-		findViews();
+	/**
+	 * Finds the event when it isn't in {@link UserData#allEvents} yet, for when the app was started from a
+	 * notification and events are still loading. The snapshot is read again on {@link #LOOKUP_THREAD} and
+	 * only that event is decoded from it, so it doesn't wait for every other event to be decoded and
+	 * indexed. If it can't be read, the loaded events are checked instead once they're ready. Once every
+	 * event is loaded, the loaded instance replaces the one read from disk, since it's the one selected
+	 * and updated. The activity closes if the event no longer exists.
+	 *
+	 * @param pk {@link Event#getPk()}
+	 */
+	private void loadEvent(final String pk)
+	{
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady eventDataReady)
+			{
+				Event loadedEvent = UserData.allEvents.get(pk);
+				//the event read from disk is only kept until every event is loaded
+				if (event != null && (!eventDataReady.complete || event == loadedEvent))
+					return;
+				if (loadedEvent != null)
+					showEvent(loadedEvent);
+				else if (eventDataReady.complete)
+				{
+					Log.e(TAG, "loadEvent: event " + pk + " not found");
+					finish();
+				}
+			}
+		});
+
+		final Context context = getApplicationContext();
+		LOOKUP_THREAD.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final Event savedEvent = EventSnapshot.readEvent(context, pk);
+				if (savedEvent == null)
+					return;
+				DataBootstrap.runOnMainThread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (event != null || isFinishing() || isDestroyed())
+							return;
+						//prefer the loaded instance, in case events finished loading in the meantime
+						Event loadedEvent = UserData.allEvents.get(pk);
+						showEvent(loadedEvent != null ? loadedEvent : savedEvent);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Displays the event, and its location once the map is ready.
+	 */
+	private void showEvent(Event event)
+	{
+		this.event = event;
 		setEventData();
+		MapFragment mapFragment = (MapFragment) getFragmentManager().findFragmentById(R.id.map);
+		mapFragment.getMapAsync(this);
 	}
 
 	/**
@@ -119,9 +221,6 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 		moreButton = findViewById(R.id.moreButton);
 		moreButtonGradient = findViewById(R.id.moreButtonGradient);
 		directionsButton = findViewById(R.id.directionsButton);
-
-		MapFragment mapFragment = (MapFragment) getFragmentManager().findFragmentById(R.id.map);
-		mapFragment.getMapAsync(this);
 	}
 
 	/**
@@ -144,6 +243,8 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 		timeText.setText(event.getStartTime().toString(Event.DISPLAY_TIME_FORMAT) + " - " + event.getEndTime().toString(Event.DISPLAY_TIME_FORMAT));
 		if (UserData.selectedEvents.contains(event))
 			addButton.setText(R.string.button_text_event_added);
+		else
+			addButton.setText(R.string.button_text_event_not_added);
 		addButton.setBackgroundResource(R.drawable.bg_button_selected_ripple);
 		addButton.setOnClickListener(this);
 		moreButton.setOnClickListener(this);
@@ -221,12 +322,11 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 	}
 
 	/**
-	 * Clear the previous image and set the new one.
+	 * Set the new image. The previous image is only cleared if the new one isn't cached.
 	 */
 	private void configureImage()
 	{
-		eventImage.setImageResource(0); // clear image from cache
-		Internet.getImageForEvent(event, eventImage, coordinatorLayout);
+		Internet.getImageForEvent(event, eventImage, coordinatorLayout, this);
 	}
 
     private void configureURL()
@@ -254,7 +354,7 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 		switch (pressedButton.getId())
 		{
 			case R.id.addButton:
-				if (UserData.selectedEvents.remove(event))
+				if (UserData.unselectEvent(event))
 				{
 					Notifications.unscheduleForEvent(event, this);
 					addButton.setText(R.string.button_text_event_not_added);
@@ -262,13 +362,13 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 				}
 				else
 				{
-					UserData.selectedEvents.add(event);
+					UserData.selectEvent(event);
 					if (Settings.getReceiveReminders(this))
 						Notifications.scheduleForEvent(event, this);
 					addButton.setText(R.string.button_text_event_added);
 					Toast.makeText(this, R.string.toast_text_event_added, Toast.LENGTH_SHORT).show();
 				}
-				NotificationCenter.DEFAULT.post(new NotificationCenter.EventSelectionChanged());
+				NotificationCenter.DEFAULT.post(new NotificationCenter.EventSelectionChanged(event));
 				break;
 			case R.id.moreButton:
 				descriptionText.setMaxLines(Integer.MAX_VALUE);
@@ -303,6 +403,8 @@ public class DetailsActivity extends AppCompatActivity implements OnMapReadyCall
 	{
 		LatLng position = new LatLng(event.getLatitude(), event.getLongitude());
 		map.moveCamera(CameraUpdateFactory.newLatLngZoom(position, MAP_ZOOM));
+		//called again if the event read from disk is replaced
+		map.clear();
 		map.addMarker(new MarkerOptions().position(position).title(event.getLocation()));
 	}
 
@@ -0,0 +1,141 @@
+package com.cornellsatech.o_week;
+
+import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.Event;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * Everything that changed when a {@link com.cornellsatech.o_week.models.VersionUpdate} was applied.
+ * Listeners use this to only reload what they display. Each pk is in at most one of {@link #addedPks},
+ * {@link #changedPks} and {@link #deletedPks}: if an update changes an event more than once, only the
+ * net change is recorded.
+ *
+ * {@link #addedPks}: Pks of events that did not exist before.
+ * {@link #changedPks}: Pks of events that existed before and were replaced.
+ * {@link #deletedPks}: Pks of events that were removed.
+ * {@link #changedEvents}: New versions of added and changed events.
+ * {@link #deletedEvents}: Last versions of deleted events.
+ * {@link #affectedDates}: Dates that gained, lost, or had events changed, before and after the update.
+ * {@link #affectedCategories}: {@link Category#getPk()} of categories whose events changed.
+ * {@link #datesChanged}: True if a date gained its first event or lost its last one.
+ * {@link #categoriesChanged}: True if any {@link Category} was added, changed, or removed.
+ *
+ * @see EventMerger
+ */
+@Getter
+public class EventDiff
+{
+	private final Set<String> addedPks = new HashSet<>();
+	private final Set<String> changedPks = new HashSet<>();
+	private final Set<String> deletedPks = new HashSet<>();
+	private final List<Event> changedEvents = new ArrayList<>();
+	private final List<Event> deletedEvents = new ArrayList<>();
+	private final Set<LocalDate> affectedDates = new HashSet<>();
+	private final Set<String> affectedCategories = new HashSet<>();
+	private boolean datesChanged = false;
+	private boolean categoriesChanged = false;
+
+	public boolean isEmpty()
+	{
+		return changedEvents.isEmpty() && deletedEvents.isEmpty() && !categoriesChanged;
+	}
+
+	public boolean affects(LocalDate date)
+	{
+		return affectedDates.contains(date);
+	}
+
+	/**
+	 * Records that the event was added or replaced, replacing any earlier change to its pk.
+	 *
+	 * @param replaced True if an event with the same pk existed right before this change.
+	 */
+	void changed(Event event, boolean replaced)
+	{
+		String pk = event.getPk();
+		if (addedPks.contains(pk) || changedPks.contains(pk))
+			removeByPk(changedEvents, pk);
+		else if (deletedPks.remove(pk))
+		{
+			//deleted earlier in the update, so it existed before the update
+			removeByPk(deletedEvents, pk);
+			changedPks.add(pk);
+		}
+		else if (replaced)
+			changedPks.add(pk);
+		else
+			addedPks.add(pk);
+		changedEvents.add(event);
+	}
+
+	/**
+	 * Records that the event was removed, replacing any earlier change to its pk.
+	 */
+	void deleted(Event event)
+	{
+		String pk = event.getPk();
+		//added earlier in the update, so it didn't exist before the update
+		if (addedPks.remove(pk))
+		{
+			removeByPk(changedEvents, pk);
+			return;
+		}
+		if (changedPks.remove(pk))
+			removeByPk(changedEvents, pk);
+		deletedPks.add(pk);
+		deletedEvents.add(event);
+	}
+
+	private static void removeByPk(List<Event> events, String pk)
+	{
+		Iterator<Event> iterator = events.iterator();
+		while (iterator.hasNext())
+			if (iterator.next().getPk().equals(pk))
+			{
+				iterator.remove();
+				return;
+			}
+	}
+
+	/**
+	 * Returns the changes of this diff followed by those of a later one, as if they were merged together.
+	 */
+	public EventDiff followedBy(EventDiff later)
+	{
+		EventDiff combined = new EventDiff();
+		combined.addAll(this);
+		combined.addAll(later);
+		return combined;
+	}
+
+	private void addAll(EventDiff other)
+	{
+		for (Event event : other.deletedEvents)
+			deleted(event);
+		for (Event event : other.changedEvents)
+			changed(event, other.changedPks.contains(event.getPk()));
+		affectedDates.addAll(other.affectedDates);
+		affectedCategories.addAll(other.affectedCategories);
+		datesChanged |= other.datesChanged;
+		categoriesChanged |= other.categoriesChanged;
+	}
+
+	void markDatesChanged()
+	{
+		datesChanged = true;
+	}
+
+	void markCategoriesChanged()
+	{
+		categoriesChanged = true;
+	}
+}
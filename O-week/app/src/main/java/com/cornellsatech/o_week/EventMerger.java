@@ -0,0 +1,96 @@
+package com.cornellsatech.o_week;
+
+import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.models.VersionUpdate;
+
+import java.util.Set;
+
+/**
+ * Applies changes from the database to an {@link EventStore} and a set of categories, recording them
+ * in an {@link EventDiff}. Every change is applied through the store's indexes, so merging takes time
+ * proportional to the size of the update, not the number of events.
+ *
+ * Changes are fed one at a time as they're decoded, then collected with {@link #finish()}. Since this
+ * is a {@link VersionUpdate.Listener}, it can be passed straight to {@link VersionUpdate#stream} when
+ * decoding on the thread that owns the store; {@link CatalogUpdate} feeds it in batches instead.
+ * If the same event is changed more than once, the last change wins: an event changed and then deleted
+ * is only recorded as deleted, or not at all if it didn't exist before the update.
+ */
+public class EventMerger implements VersionUpdate.Listener
+{
+	private final EventStore store;
+	private final Set<Category> categories;
+	private final EventDiff diff = new EventDiff();
+
+	public EventMerger(EventStore store, Set<Category> categories)
+	{
+		this.store = store;
+		this.categories = categories;
+	}
+
+	/**
+	 * Adds or replaces the event.
+	 */
+	@Override
+	public void changedEvent(Event event)
+	{
+		boolean newDate = store.eventsOnDate(event.getStartDate()).isEmpty();
+		Event previous = store.add(event);
+		diff.changed(event, previous != null);
+		diff.getAffectedDates().add(event.getStartDate());
+		diff.getAffectedCategories().addAll(event.getCategories());
+
+		if (previous != null)
+		{
+			diff.getAffectedDates().add(previous.getStartDate());
+			diff.getAffectedCategories().addAll(previous.getCategories());
+			if (store.eventsOnDate(previous.getStartDate()).isEmpty())
+				diff.markDatesChanged();
+		}
+		if (newDate)
+			diff.markDatesChanged();
+	}
+
+	/**
+	 * Removes the event with the given pk. Does nothing if there is no such event.
+	 */
+	@Override
+	public void deletedEvent(String pk)
+	{
+		Event event = store.remove(pk);
+		if (event == null)
+			return;
+		diff.deleted(event);
+		diff.getAffectedDates().add(event.getStartDate());
+		diff.getAffectedCategories().addAll(event.getCategories());
+		if (store.eventsOnDate(event.getStartDate()).isEmpty())
+			diff.markDatesChanged();
+	}
+
+	/**
+	 * Adds or replaces the category. This works because categories are compared using pk.
+	 */
+	@Override
+	public void changedCategory(Category category)
+	{
+		categories.remove(category);
+		categories.add(category);
+		diff.markCategoriesChanged();
+	}
+
+	@Override
+	public void deletedCategory(String pk)
+	{
+		if (categories.remove(Category.withPk(pk)))
+			diff.markCategoriesChanged();
+	}
+
+	/**
+	 * @return Every change applied so far.
+	 */
+	public EventDiff finish()
+	{
+		return diff;
+	}
+}
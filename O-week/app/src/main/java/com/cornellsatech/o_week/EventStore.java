@@ -0,0 +1,293 @@
+package com.cornellsatech.o_week;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cornellsatech.o_week.models.CollegeType;
+import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.models.StudentType;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Holds every {@link Event} on disk, indexed so that reads never have to scan the whole catalog.
+ * Events are filtered by category with {@link Event#getCategoryBits()} instead of an index.
+ * Every index is updated incrementally in {@link #add(Event)} and {@link #remove(String)}.
+ *
+ * {@link #eventForPk}: Every event, keyed by {@link Event#getPk()}.
+ * {@link #eventsForDate}: Events for each {@link Event#getStartDate()}, sorted chronologically.
+ *                         Keys are ordered, so they double as the sorted list of dates.
+ * {@link #requiredEvents}: Events required for each (college, student type) pair.
+ * {@link #requiredForUser}: Events required for the user's college and student type, kept up to date
+ *                           as events change, so checking whether an event is required is a single lookup.
+ * {@link #userCollege}, {@link #userStudent}: The user's types, set by {@link #setUser(CollegeType, StudentType)}.
+ *
+ * @see UserData#allEvents
+ */
+public class EventStore implements Iterable<Event>
+{
+	private final Map<String, Event> eventForPk = new HashMap<>();
+	private final TreeMap<LocalDate, List<Event>> eventsForDate = new TreeMap<>();
+	private final Table<CollegeType, StudentType, Set<Event>> requiredEvents = HashBasedTable.create();
+	private final Set<Event> requiredForUser = new HashSet<>();
+	private CollegeType userCollege = CollegeType.NOTSET;
+	private StudentType userStudent = StudentType.NOTSET;
+
+	public EventStore() {}
+
+	/**
+	 * Creates a store indexing the given events.
+	 * @param events Events to add. Later duplicates (by pk) replace earlier ones.
+	 */
+	public EventStore(Collection<Event> events)
+	{
+		addAll(events);
+	}
+
+	/**
+	 * Returns the event with the given pk.
+	 * @param pk {@link Event#getPk()}
+	 * @return Event. May be null.
+	 */
+	@Nullable
+	public Event get(String pk)
+	{
+		return eventForPk.get(pk);
+	}
+
+	public boolean contains(Event event)
+	{
+		return eventForPk.containsKey(event.getPk());
+	}
+
+	public int size()
+	{
+		return eventForPk.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return eventForPk.isEmpty();
+	}
+
+	/**
+	 * Returns all events starting on the given date.
+	 * @param date {@link Event#getStartDate()}
+	 * @return Unmodifiable list, sorted chronologically. Empty if there are no events on that date.
+	 */
+	public List<Event> eventsOnDate(LocalDate date)
+	{
+		List<Event> events = eventsForDate.get(date);
+		if (events == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * Returns all events that are required for a student of the given college and type.
+	 * @return Unmodifiable set. Empty if either type is not set.
+	 */
+	public Set<Event> requiredEvents(CollegeType collegeType, StudentType studentType)
+	{
+		Set<Event> events = requiredEvents.get(collegeType, studentType);
+		if (events == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(events);
+	}
+
+	/**
+	 * Sets whose required events are returned by {@link #requiredForUser()}. Only recomputes them if
+	 * either type changed.
+	 */
+	public void setUser(CollegeType collegeType, StudentType studentType)
+	{
+		if (collegeType == userCollege && studentType == userStudent)
+			return;
+		userCollege = collegeType;
+		userStudent = studentType;
+		requiredForUser.clear();
+		Set<Event> events = requiredEvents.get(collegeType, studentType);
+		if (events != null)
+			requiredForUser.addAll(events);
+	}
+
+	/**
+	 * Returns all events required for the user set in {@link #setUser(CollegeType, StudentType)}.
+	 * @return Unmodifiable set. Empty if either type is not set.
+	 */
+	public Set<Event> requiredForUser()
+	{
+		return Collections.unmodifiableSet(requiredForUser);
+	}
+
+	/**
+	 * Returns whether the event is required for the user set in {@link #setUser(CollegeType, StudentType)}.
+	 */
+	public boolean isRequiredForUser(Event event)
+	{
+		return requiredForUser.contains(event);
+	}
+
+	/**
+	 * Returns every date that has at least one event.
+	 * @return A new list of dates, in ascending order.
+	 */
+	public List<LocalDate> sortedDates()
+	{
+		return new ArrayList<>(eventsForDate.keySet());
+	}
+
+	/**
+	 * Adds the event to every index. If an event with the same pk already exists, it is replaced,
+	 * and removed from any indexes it no longer belongs to. {@link Event#computeCategoryBits()} is
+	 * called here, so filtering never has to.
+	 *
+	 * @param event Event to add.
+	 * @return The event that was replaced, or null if the event is new.
+	 */
+	@Nullable
+	public Event add(Event event)
+	{
+		Event previous = remove(event.getPk());
+		eventForPk.put(event.getPk(), event);
+
+		List<Event> dateEvents = eventsForDate.get(event.getStartDate());
+		if (dateEvents == null)
+		{
+			dateEvents = new ArrayList<>();
+			eventsForDate.put(event.getStartDate(), dateEvents);
+		}
+		int index = Collections.binarySearch(dateEvents, event);
+		dateEvents.add(index < 0 ? -index - 1 : index, event);
+
+		event.computeCategoryBits();
+		for (String categoryPk : event.getCategories())
+		{
+			CollegeType college = CollegeType.collegeToPk.inverse().get(categoryPk);
+			if (college == null)
+				continue;
+			if (event.isFirstYearRequired())
+				addRequired(college, StudentType.FRESHMAN, event);
+			if (event.isTransferRequired())
+				addRequired(college, StudentType.TRANSFER, event);
+		}
+		return previous;
+	}
+
+	public void addAll(Collection<Event> events)
+	{
+		for (Event event : events)
+			add(event);
+	}
+
+	/**
+	 * Removes the event with the given pk from every index.
+	 *
+	 * @param pk {@link Event#getPk()}
+	 * @return The removed event, or null if no event had that pk.
+	 */
+	@Nullable
+	public Event remove(String pk)
+	{
+		Event event = eventForPk.remove(pk);
+		if (event == null)
+			return null;
+
+		List<Event> dateEvents = eventsForDate.get(event.getStartDate());
+		if (dateEvents != null)
+		{
+			int index = indexOf(dateEvents, event);
+			if (index >= 0)
+				dateEvents.remove(index);
+			if (dateEvents.isEmpty())
+				eventsForDate.remove(event.getStartDate());
+		}
+
+		requiredForUser.remove(event);
+		for (String categoryPk : event.getCategories())
+		{
+			CollegeType college = CollegeType.collegeToPk.inverse().get(categoryPk);
+			if (college == null)
+				continue;
+			removeRequired(college, StudentType.FRESHMAN, event);
+			removeRequired(college, StudentType.TRANSFER, event);
+		}
+		return event;
+	}
+
+	public void clear()
+	{
+		eventForPk.clear();
+		eventsForDate.clear();
+		requiredEvents.clear();
+		requiredForUser.clear();
+	}
+
+	/**
+	 * Iterates over every event, in no particular order. Do not remove events through this iterator.
+	 */
+	@NonNull
+	@Override
+	public Iterator<Event> iterator()
+	{
+		return Collections.unmodifiableCollection(eventForPk.values()).iterator();
+	}
+
+	private void addRequired(CollegeType college, StudentType studentType, Event event)
+	{
+		if (college == userCollege && studentType == userStudent)
+			requiredForUser.add(event);
+		Set<Event> events = requiredEvents.get(college, studentType);
+		if (events == null)
+		{
+			events = new HashSet<>();
+			requiredEvents.put(college, studentType, events);
+		}
+		events.add(event);
+	}
+
+	private void removeRequired(CollegeType college, StudentType studentType, Event event)
+	{
+		Set<Event> events = requiredEvents.get(college, studentType);
+		if (events == null)
+			return;
+		events.remove(event);
+		if (events.isEmpty())
+			requiredEvents.remove(college, studentType);
+	}
+
+	/**
+	 * Binary searches for the event's start time, then checks the neighboring events with the same
+	 * start time for the event itself.
+	 *
+	 * @param sortedEvents Events sorted chronologically.
+	 * @param event Event to find.
+	 * @return Index of the event, or -1 if not found.
+	 */
+	private static int indexOf(List<Event> sortedEvents, Event event)
+	{
+		int index = Collections.binarySearch(sortedEvents, event);
+		if (index < 0)
+			return -1;
+		for (int i = index; i >= 0 && sortedEvents.get(i).getStart() == event.getStart(); i--)
+			if (sortedEvents.get(i).equals(event))
+				return i;
+		for (int i = index + 1; i < sortedEvents.size() && sortedEvents.get(i).getStart() == event.getStart(); i++)
+			if (sortedEvents.get(i).equals(event))
+				return i;
+		return -1;
+	}
+}
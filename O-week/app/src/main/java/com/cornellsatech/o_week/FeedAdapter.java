@@ -5,47 +5,94 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.util.Callback;
 import com.cornellsatech.o_week.util.NotificationCenter;
-import com.google.common.eventbus.Subscribe;
 
 import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
+import lombok.Value;
+
 /**
- * Displays events for a given day in a list.
+ * Displays events for a given day in a list. Whenever the list changes, the new list is compared with
+ * the old one on a background thread, so only the cells of events that were added, moved, changed, or
+ * removed are updated.
  *
- * {@link #events}: All events on the {@link UserData#selectedDate}. However, this list may be filtered
- *                  by category, so we must keep this list from mutating {@link UserData#allEvents}.
+ * {@link #differ}: Holds the {@link Row}s currently displayed. Each row is an event on {@link #date},
+ *                  filtered by category. Rows come from {@link DaySliceCache} and are shared between adapters.
+ * {@link #PAYLOAD_REQUIRED}: Payload of a change where only the required label needs to be updated.
  *
  * @see FeedCell
  */
 public class FeedAdapter extends RecyclerView.Adapter<FeedCell>
 {
+	static final Object PAYLOAD_REQUIRED = new Object();
 	private final LocalDate date;
-	public List<Event> events;
+	private final AsyncListDiffer<Row> differ = new AsyncListDiffer<>(this, new RowDiff());
 	private final View emptyView;
 
 	private static final String TAG = FeedAdapter.class.getSimpleName();
 
 	/**
-	 * Registers this object to listen in on notifications.
-	 * Unregisters itself in {@link #onDetachedFromRecyclerView(RecyclerView)} to avoid memory leaks.
+	 * A displayed event, and whether it was required for the user when it was displayed.
+	 */
+	@Value
+	static class Row
+	{
+		private final Event event;
+		private final boolean required;
+	}
+
+	/**
+	 * Listens for notifications concerning {@link #date} until the owner is destroyed.
+	 *
+	 * @param owner Lifecycle of the view displaying this adapter.
 	 */
-	public FeedAdapter(LocalDate date, View emptyView)
+	public FeedAdapter(LocalDate date, View emptyView, LifecycleOwner owner)
 	{
-		NotificationCenter.DEFAULT.register(this);
 		this.emptyView = emptyView;
 		this.date = date;
+		subscribe(owner);
 		loadData();
 	}
+	private void subscribe(LifecycleOwner owner)
+	{
+		NotificationCenter.DEFAULT.subscribe(owner, NotificationCenter.EventCatalogChanged.class, date, new Callback<NotificationCenter.EventCatalogChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventCatalogChanged eventCatalogChanged)
+			{
+				loadData();
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(owner, NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady eventDataReady)
+			{
+				loadData();
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(owner, NotificationCenter.EventFilterChanged.class, new Callback<NotificationCenter.EventFilterChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventFilterChanged eventFilterChanged)
+			{
+				//the user undid every change before the notification was delivered
+				if (!eventFilterChanged.isEmpty())
+					loadData();
+			}
+		});
+	}
 	/**
 	 * Creates a {@link FeedCell} to display dates by inflating it from {@link com.cornellsatech.o_week.R.layout#cell_feed}.
 	 *
@@ -67,85 +114,89 @@ public class FeedAdapter extends RecyclerView.Adapter<FeedCell>
 	 * @param position {@inheritDoc}
 	 */
 	@Override
-	public void onBindViewHolder(FeedCell viewHolder, int position)
+	public void onBindViewHolder(@NonNull FeedCell viewHolder, int position)
 	{
-		Event event = events.get(position);
-		viewHolder.configure(event);
+		Row row = differ.getCurrentList().get(position);
+		viewHolder.configure(row.getEvent(), row.isRequired());
 	}
 	/**
-	 * Returns total number of events that will be shown in the {@link RecyclerView}.
-	 * @return Size of {@link #events}
+	 * Only updates the required label if that's all that changed.
+	 *
+	 * @param payloads {@link #PAYLOAD_REQUIRED}, or empty if the cell should be fully updated.
 	 */
 	@Override
-	public int getItemCount()
+	public void onBindViewHolder(@NonNull FeedCell viewHolder, int position, @NonNull List<Object> payloads)
 	{
-		return events.size();
-	}
-
-	/**
-	 * Listens for updates to the list from the database. We don't know which events were updated, so
-	 * the entire list is swapped out.
-	 */
-	@Subscribe
-	public void onInternetUpdate(NotificationCenter.EventInternetUpdate eventReload)
-	{
-		loadData();
+		if (payloads.isEmpty() || !payloads.contains(PAYLOAD_REQUIRED))
+		{
+			onBindViewHolder(viewHolder, position);
+			return;
+		}
+		viewHolder.configureRequired(differ.getCurrentList().get(position).isRequired());
 	}
-
 	/**
-	 * Listens for a new filter the user chose. Reloads all events.
+	 * Returns the events currently displayed, in order.
 	 */
-	@Subscribe
-	public void onFilterChanged(NotificationCenter.EventFilterChanged eventFilterChanged)
+	public List<Event> getEvents()
 	{
-		loadData();
+		List<Row> rows = differ.getCurrentList();
+		List<Event> events = new ArrayList<>(rows.size());
+		for (Row row : rows)
+			events.add(row.getEvent());
+		return events;
 	}
 	/**
-	 * Unregisters this object as a listener to avoid memory leaks. Registered in {@link FeedAdapter()}.
+	 * Returns total number of events that will be shown in the {@link RecyclerView}.
+	 * @return Number of rows in {@link #differ}
 	 */
 	@Override
-	public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView)
+	public int getItemCount()
 	{
-		NotificationCenter.DEFAULT.unregister(this);
+		return differ.getCurrentList().size();
 	}
+
 	/**
-	 * Saves shallow copies of lists of events from {@link UserData#allEvents}.
-	 * The copies allow list manipulation of which events are displayed depending on the user's filter.
+	 * Loads the rows for {@link #date} from {@link DaySliceCache}, which already filtered and sorted them.
+	 * The new rows are diffed with the current ones in the background. {@link #emptyView} is only updated
+	 * once they're displayed, so it never disagrees with the rows on screen.
 	 */
 	private void loadData()
 	{
-		List<Event> events = new ArrayList<>();
-		for (Event event : UserData.allEvents)
-			if (event.getStartDate().equals(date))
-				events.add(event);
-		filterEvents(events);
-
-		emptyView.setVisibility(events.isEmpty() ? View.VISIBLE : View.GONE);
-
-		Collections.sort(events);
-		this.events = events;
-		notifyDataSetChanged();
+		differ.submitList(DaySliceCache.get(date), new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				emptyView.setVisibility(differ.getCurrentList().isEmpty() ? View.VISIBLE : View.GONE);
+			}
+		});
 	}
 
 	/**
-	 * Removes all events that are not part of the given category or required (if that option is selected).
-	 * @param events The list of events to remove from.
+	 * Compares rows by {@link Event#getPk()}, then by contents. A row whose event is unchanged except
+	 * for whether it's required only rebinds the required label.
 	 */
-	private void filterEvents(Collection<Event> events)
+	private static class RowDiff extends DiffUtil.ItemCallback<Row>
 	{
-		if (UserData.selectedFilters.isEmpty() && !UserData.filterRequired)
-			return;
+		@Override
+		public boolean areItemsTheSame(@NonNull Row oldRow, @NonNull Row newRow)
+		{
+			return oldRow.getEvent().getPk().equals(newRow.getEvent().getPk());
+		}
 
-		Iterator<Event> eventsIterator = events.iterator();
-		while (eventsIterator.hasNext())
+		@Override
+		public boolean areContentsTheSame(@NonNull Row oldRow, @NonNull Row newRow)
 		{
-			Event event = eventsIterator.next();
+			return oldRow.isRequired() == newRow.isRequired() && oldRow.getEvent().sameContents(newRow.getEvent());
+		}
 
-			if (!Collections.disjoint(UserData.selectedFilters, event.getCategories()))
-				continue;
-			if (UserData.filterRequired && UserData.requiredForUser(event))
-				continue;
-			eventsIterator.remove();
+		@Nullable
+		@Override
+		public Object getChangePayload(@NonNull Row oldRow, @NonNull Row newRow)
+		{
+			if (oldRow.getEvent().sameContents(newRow.getEvent()))
+				return PAYLOAD_REQUIRED;
+			return null;
 		}
 	}
 }
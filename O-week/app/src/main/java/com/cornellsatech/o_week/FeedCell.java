@@ -49,13 +49,29 @@ public class FeedCell extends RecyclerView.ViewHolder implements View.OnClickLis
 	 * @param event The {@link Event} this cell will represent as long as it is visible.
 	 */
 	public void configure(Event event)
+	{
+		configure(event, UserData.requiredForUser(event));
+	}
+	/**
+	 * Same as {@link #configure(Event)}, when whether the event is required is already known.
+	 *
+	 * @param required {@link UserData#requiredForUser(Event)}
+	 */
+	public void configure(Event event, boolean required)
 	{
 		this.event = event;
 		startTimeText.setText(event.getStartTime().toString(Event.DISPLAY_PADDED_TIME_FORMAT));
 		endTimeText.setText(event.getEndTime().toString(Event.DISPLAY_PADDED_TIME_FORMAT));
 		titleText.setText(event.getName());
 		locationText.setText(event.getLocation());
-		setVisible(UserData.requiredForUser(event), requiredLabel);
+		configureRequired(required);
+	}
+	/**
+	 * Shows the required label if the event is required for the user.
+	 */
+	public void configureRequired(boolean required)
+	{
+		setVisible(required, requiredLabel);
 	}
 	/**
 	 * This object has been clicked. Open the details page.
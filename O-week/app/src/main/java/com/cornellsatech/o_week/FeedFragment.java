@@ -13,10 +13,11 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cornellsatech.o_week.models.Event;
-import com.cornellsatech.o_week.util.NotificationCenter;
 
 import org.joda.time.LocalDate;
 
+import java.util.List;
+
 /**
  * Displays a list of events, ordered chronologically. This is a {@link Fragment} so that it can be
  * easily swapped out with {@link ScheduleFragment} while keeping the same date picker up top.
@@ -50,10 +51,7 @@ public class FeedFragment extends Fragment
 		return feedFragment;
 	}
 	/**
-	 * Connects views, sets up recycler, registers as listener. Unregisters in {@link #onDestroyView()}.
-	 * Listens for event clicks and opens {@link DetailsActivity} upon a click.
-	 *
-	 * Retrieves {@link #date} from the bundle.
+	 * Connects views. Retrieves {@link #date} from the bundle.
 	 */
 	@Nullable
 	@Override
@@ -69,21 +67,18 @@ public class FeedFragment extends Fragment
 			Log.e(TAG, "onCreateView: date not found");
 
 		feedRecycler = view.findViewById(R.id.feedRecycler);
-		setUpRecycler(view.findViewById(R.id.emptyState));
 		return view;
 	}
 
 	/**
-	 * Unregisters as listener to prevent memory leaks. Also triggers {@link FeedAdapter}'s un-registration.
-	 * Registered in {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)}.
+	 * Sets up the recycler once the view exists, so {@link FeedAdapter} listens for notifications until
+	 * the view is destroyed.
 	 */
 	@Override
-	public void onDestroyView()
+	public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState)
 	{
-		super.onDestroyView();
-		NotificationCenter.DEFAULT.unregister(this);
-		//detach the adapter so that its onDestroy methods trigger
-		feedRecycler.setAdapter(null);
+		super.onViewCreated(view, savedInstanceState);
+		setUpRecycler(view.findViewById(R.id.emptyState));
 	}
 	/**
 	 * Connects {@link #feedRecycler} to {@link #feedAdapter}.
@@ -91,7 +86,7 @@ public class FeedFragment extends Fragment
 	 */
 	private void setUpRecycler(View emptyView)
 	{
-		feedAdapter = new FeedAdapter(date, emptyView);
+		feedAdapter = new FeedAdapter(date, emptyView, getViewLifecycleOwner());
 		feedRecycler.setLayoutManager(new LinearLayoutManager(getActivity()));
 		feedRecycler.setAdapter(feedAdapter);
 		scrollToNextEvent();
@@ -107,9 +102,10 @@ public class FeedFragment extends Fragment
 			return;
 		if (!LocalDate.now().isEqual(UserData.selectedDate))
 			return;
-		for (int i = 0; i < feedAdapter.events.size(); i++)
+		List<Event> events = feedAdapter.getEvents();
+		for (int i = 0; i < events.size(); i++)
 		{
-			Event event = feedAdapter.events.get(i);
+			Event event = events.get(i);
 			if (event.getStart() < now)
 				continue;
 
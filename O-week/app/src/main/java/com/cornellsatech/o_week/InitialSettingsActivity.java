@@ -12,13 +12,12 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.viewpager.widget.ViewPager;
 
 import com.cornellsatech.o_week.models.CollegeType;
-import com.cornellsatech.o_week.models.Event;
 import com.cornellsatech.o_week.models.StudentType;
+import com.cornellsatech.o_week.util.Callback;
 import com.cornellsatech.o_week.util.NotificationCenter;
 import com.cornellsatech.o_week.util.Notifications;
 import com.cornellsatech.o_week.util.Settings;
 import com.google.android.material.snackbar.Snackbar;
-import com.google.common.eventbus.Subscribe;
 
 import lombok.Setter;
 
@@ -51,7 +50,23 @@ public class InitialSettingsActivity extends AppCompatActivity
 	{
 		super.onCreate(savedInstanceState);
 
-		NotificationCenter.DEFAULT.register(this);
+		//listen until this activity is destroyed
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventInternetUpdate.class, new Callback<NotificationCenter.EventInternetUpdate>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventInternetUpdate e)
+			{
+				onInternetUpdate(e);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady e)
+			{
+				onDataReady(e);
+			}
+		});
 		setContentView(R.layout.initial_settings_pager);
 
 		constraintLayout = findViewById(R.id.constraintLayout);
@@ -60,16 +75,6 @@ public class InitialSettingsActivity extends AppCompatActivity
 		pager.setAdapter(adapter);
 	}
 
-	/**
-	 * Unregister this as a listener.
-	 */
-	@Override
-	protected void onDestroy()
-	{
-		super.onDestroy();
-		NotificationCenter.DEFAULT.unregister(this);
-	}
-
 	/**
 	 * Switch to the next page of the initial settings. If all settings are complete, this activity is finished.
 	 */
@@ -100,7 +105,9 @@ public class InitialSettingsActivity extends AppCompatActivity
 	 */
 	private void attemptFinish()
 	{
-		if (Settings.getTimestamp(this) == 0)
+		if (!UserData.isLoaded())
+			waitingOnEventDownload = true;
+		else if (Settings.getTimestamp(this) == 0)
 		{
 			waitingOnEventDownload = true;
 			showRetryDownloadSnackbar();
@@ -122,9 +129,7 @@ public class InitialSettingsActivity extends AppCompatActivity
 	private void addRequiredEvents()
 	{
 		Log.i(TAG, "Checking selected events: " + UserData.selectedEvents.size());
-		for (Event event : UserData.allEvents)
-			if (UserData.requiredForUser(event))
-				UserData.selectedEvents.add(event);
+		UserData.selectedEvents.addAll(UserData.requiredEventsForUser());
 		if (!UserData.selectedEvents.isEmpty())
 			NotificationCenter.DEFAULT.post(new NotificationCenter.EventSelectionChanged());
 		Log.i(TAG, "Selected events: " + UserData.selectedEvents.size());
@@ -149,8 +154,7 @@ public class InitialSettingsActivity extends AppCompatActivity
 	 * If {@link #waitingOnEventDownload} is true, then the user has completed the tutorial but
 	 * the events have yet to finish downloading. Tell the user and let him try again.
 	 */
-	@Subscribe
-	public void onInternetUpdate(NotificationCenter.EventInternetUpdate e)
+	private void onInternetUpdate(NotificationCenter.EventInternetUpdate e)
 	{
 		if (waitingOnEventDownload)
 		{
@@ -164,7 +168,19 @@ public class InitialSettingsActivity extends AppCompatActivity
 	}
 
 	/**
-	 * Show a snackbar that allows the user to redownload events from the database.
+	 * If the user completed the tutorial while events were still loading from disk, try to finish now.
+	 * If the events were never downloaded, {@link #onInternetUpdate(NotificationCenter.EventInternetUpdate)}
+	 * will follow once the download completes.
+	 */
+	private void onDataReady(NotificationCenter.EventDataReady e)
+	{
+		if (waitingOnEventDownload && e.complete && Settings.getTimestamp(this) != 0)
+			attemptFinish();
+	}
+
+	/**
+	 * Show a snackbar that allows the user to redownload events from the database. Events already loaded
+	 * from disk are kept; only the download is retried, even if a previous retry is still waiting.
 	 */
 	private void showRetryDownloadSnackbar()
 	{
@@ -175,7 +191,7 @@ public class InitialSettingsActivity extends AppCompatActivity
 					@Override
 					public void onClick(View v)
 					{
-						UserData.loadData(context);
+						SyncScheduler.requestSync(context, true);
 					}
 				})
 				.show();
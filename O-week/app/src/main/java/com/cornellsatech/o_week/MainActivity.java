@@ -13,10 +13,10 @@ import androidx.fragment.app.FragmentTransaction;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.cornellsatech.o_week.util.Callback;
 import com.cornellsatech.o_week.util.NotificationCenter;
 import com.cornellsatech.o_week.util.Settings;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
-import com.google.common.eventbus.Subscribe;
 
 /**
  * The first {@link android.app.Activity} that will execute when the app launches.
@@ -44,7 +44,7 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 		setSupportActionBar(toolbar);
 		setUpRecycler();
 
-		NotificationCenter.DEFAULT.register(this);
+		subscribe();
 
 		BottomNavigationView bottomNavBar = findViewById(R.id.navigation);
 		bottomNavBar.setOnNavigationItemSelectedListener(this);
@@ -87,7 +87,6 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 	/**
 	 * Trigger {@link DatePickerAdapter#onDetachedFromRecyclerView(RecyclerView)} so it unregisters itself
 	 * as a listener.
-	 * Also unregister ourselves as a listener.
 	 */
 	@Override
 	protected void onDestroy()
@@ -95,7 +94,37 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 		super.onDestroy();
 		//detach the adapter so that its onDestroy methods trigger
 		datePickerRecycler.setAdapter(null);
-		NotificationCenter.DEFAULT.unregister(this);
+	}
+
+	/**
+	 * Listen for notifications until this activity is destroyed.
+	 */
+	private void subscribe()
+	{
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventDateChanged.class, new Callback<NotificationCenter.EventDateChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDateChanged eventDateChanged)
+			{
+				onDateChanged(eventDateChanged);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady eventDataReady)
+			{
+				onDataReady(eventDataReady);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(this, NotificationCenter.EventCatalogChanged.class, new Callback<NotificationCenter.EventCatalogChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventCatalogChanged eventCatalogChanged)
+			{
+				onCatalogChanged(eventCatalogChanged);
+			}
+		});
 	}
 
 	/**
@@ -132,6 +161,17 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 		datePickerRecycler.setVisibility(showDatePicker ? View.VISIBLE : View.GONE);
 	}
 
+	/**
+	 * Check for updates when the app returns to the foreground, in case the scheduled sync was delayed
+	 * while the device slept.
+	 */
+	@Override
+	protected void onStart()
+	{
+		super.onStart();
+		SyncScheduler.requestSync(this, false);
+	}
+
 	/**
 	 * Save selected events when this app is about to enter the background, in case user selections changed.
 	 * This is not done continuously to save on processing power.
@@ -149,8 +189,7 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 	 *
 	 * @param event Ignored.
 	 */
-	@Subscribe
-	public void onDateChanged(NotificationCenter.EventDateChanged event)
+	private void onDateChanged(NotificationCenter.EventDateChanged event)
 	{
 		datePickerAdapter.notifyDataSetChanged();
 
@@ -160,11 +199,19 @@ public class MainActivity extends AppCompatActivity implements BottomNavigationV
 	}
 
     /**
-     * Refresh dates shown in date picker.
+     * Show dates loaded from disk in the date picker.
      */
-    @Subscribe
-    public void onInternetUpdate(NotificationCenter.EventInternetUpdate eventNewDates)
+    private void onDataReady(NotificationCenter.EventDataReady eventDataReady)
     {
         onDateChanged(null);
     }
+
+    /**
+     * Refresh dates shown in date picker, if any were added or removed.
+     */
+    private void onCatalogChanged(NotificationCenter.EventCatalogChanged eventCatalogChanged)
+    {
+        if (eventCatalogChanged.diff.isDatesChanged())
+            onDateChanged(null);
+    }
 }
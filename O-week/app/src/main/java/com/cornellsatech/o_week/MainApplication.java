@@ -1,17 +1,28 @@
 package com.cornellsatech.o_week;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.content.Context;
 import android.content.Intent;
+import android.os.Process;
 
 import com.cornellsatech.o_week.models.CollegeType;
 import com.cornellsatech.o_week.models.StudentType;
+import com.cornellsatech.o_week.util.ImagePrefetcher;
+import com.cornellsatech.o_week.util.Internet;
 import com.cornellsatech.o_week.util.Settings;
 
 import net.danlew.android.joda.JodaTimeAndroid;
 
+import java.util.List;
+
 /**
  * The entry point into the app. Initialize all singletons, static variables, or anything that should only
- * run once when the app launches here.
+ * run once when the app launches here. Keep this fast; events are loaded in the background by
+ * {@link UserData#loadData(android.content.Context)}, then kept up to date by {@link SyncScheduler}.
+ *
+ * Receivers declared in other processes (like {@link com.cornellsatech.o_week.util.AlarmReceiver}) also
+ * create an instance. Those processes never load events or access the internet.
  */
 public class MainApplication extends Application
 {
@@ -19,8 +30,12 @@ public class MainApplication extends Application
 	public void onCreate()
 	{
 		super.onCreate();
-		Settings.clearAllForNewVersion(this);
 		JodaTimeAndroid.init(this);
+		if (!isMainProcess())
+			return;
+		Settings.clearAllForNewVersion(this);
+		Internet.installCache(this);
+		ImagePrefetcher.start(this);
 		UserData.loadData(this);
 
 		//if the user never filled out his info, he needs to do so.
@@ -33,4 +48,20 @@ public class MainApplication extends Application
 			startActivity(intent);
 		}
 	}
+
+	/**
+	 * Returns whether this is the app's default process, which is named after the package.
+	 */
+	private boolean isMainProcess()
+	{
+		ActivityManager manager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+		List<ActivityManager.RunningAppProcessInfo> processes = manager == null ? null : manager.getRunningAppProcesses();
+		if (processes == null)
+			return true;
+		int pid = Process.myPid();
+		for (ActivityManager.RunningAppProcessInfo process : processes)
+			if (process.pid == pid)
+				return getPackageName().equals(process.processName);
+		return true;
+	}
 }
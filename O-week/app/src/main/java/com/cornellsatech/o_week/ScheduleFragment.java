@@ -1,56 +1,47 @@
 package com.cornellsatech.o_week;
 
-import android.graphics.Paint;
 import android.os.Bundle;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
 import android.widget.RelativeLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
 import androidx.annotation.IdRes;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.content.ContextCompat;
-import androidx.core.util.Pair;
 import androidx.fragment.app.Fragment;
-import androidx.percentlayout.widget.PercentRelativeLayout;
 
 import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.util.Callback;
 import com.cornellsatech.o_week.util.NotificationCenter;
 import com.google.common.collect.ImmutableList;
-import com.google.common.eventbus.Subscribe;
 
 import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
 import org.joda.time.Minutes;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * Displays {@link Event}s with height proportional to the event's length, laying them side by side
  * should their times overlap.
  *
- * Notes on how view IDs are numbered in this class:
- * 1. For time lines: ID = hour the time line represents + 1
- * 2. For events: the event's hashcode
- * IDs are required for views to specify their positions relative to each other. A structured ID scheme
- * allows us to know which IDs correspond to which events.
+ * Time lines are views with ID = hour the time line represents + 1. Events are not views; their positions
+ * are calculated here and drawn by {@link ScheduleView}.
  *
- * {@link #scheduleContainer}: Holds all time lines, and the {@link #eventsContainer}. Never redrawn.
- * {@link #eventsContainer}: Holds all events. Redrawn whenever a date changes or an event is selected
- *                           or unselected. Separated from {@link #scheduleContainer} so time lines
- *                           are not also redrawn every time, saving processing power.
- * {@link #pkHashToEvent}: Returns the {@link Event} for the given {@link Event#pk}. Used in {@link #idToEvent(int)},
- *                     which helps the app determine the event a user clicks.
+ * {@link #scheduleContainer}: Holds all time lines. Never redrawn.
+ * {@link #scheduleView}: Draws all events. Redrawn whenever a date changes or an event is selected
+ *                        or unselected. Separated from {@link #scheduleContainer} so time lines
+ *                        are not also redrawn every time, saving processing power.
+ * {@link #scheduleLayout}: Positions events, given their times relative to the first time line.
+ * {@link #intervals}: Times of the events drawn, sorted chronologically. Same order as the cells of
+ *                     {@link #scheduleView}.
  * {@link #HOUR_HEIGHT}: The height (dp) of an event that spans 1 hour.
  * {@link #HOUR_TEXT_HEIGHT}: The size (sp) or the hour text (for example: 1:00 PM). Used in calculation
  *                            to find the y position of an event for its start time.
@@ -59,16 +50,16 @@ import java.util.Queue;
  * {@link #START_HOUR}: The earliest hour an event can start.
  * {@link #END_HOUR}: The latest hour an event can end. Note that this is in AM; END_HOUR must < START_HOUR.
  */
-public class ScheduleFragment extends Fragment implements View.OnClickListener
+public class ScheduleFragment extends Fragment implements Callback<Event>
 {
 	private ScrollView scrollView;
 	private RelativeLayout scheduleContainer;
-	private PercentRelativeLayout eventsContainer;
+	private ScheduleView scheduleView;
+	private ScheduleLayout scheduleLayout;
+	private final List<ScheduleLayout.Interval<Event>> intervals = new ArrayList<>();
 	private final List<View> timeLines = new ArrayList<>();
-	private final SparseArray<Event> pkHashToEvent = new SparseArray<>();
 	private int HOUR_HEIGHT;
 	private int HOUR_TEXT_HEIGHT;
-	private int EVENT_PADDING;
 	private static final List<LocalTime> HOURS;
 	public static final int START_HOUR = 7;
 	public static final int END_HOUR = 2;
@@ -113,7 +104,7 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 	}
 
 	/**
-	 * Sets up listener, associate views, retrieve final values from
+	 * Associate views, retrieve final values from
 	 * {@link com.cornellsatech.o_week.R.dimen}, then draws everything.
 	 * Retrieves {@link #date} from the bundle.
 	 *
@@ -126,8 +117,6 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 	@Override
 	public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState)
 	{
-		NotificationCenter.DEFAULT.register(this);
-
 		View view = inflater.inflate(R.layout.fragment_schedule, container, false);
 
 		//retrieve date from bundle
@@ -137,11 +126,12 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 			Log.e(TAG, "onCreateView: date not found");
 
 		scheduleContainer = view.findViewById(R.id.scheduleContainer);
-		eventsContainer = view.findViewById(R.id.eventsContainer);
+		scheduleView = view.findViewById(R.id.scheduleView);
+		scheduleView.setOnEventClickListener(this);
 		scrollView = view.findViewById(R.id.scrollView);
 		HOUR_HEIGHT = getResources().getDimensionPixelSize(R.dimen.distance_between_time_lines);
 		HOUR_TEXT_HEIGHT = getResources().getDimensionPixelSize(R.dimen.size_hour_textview);
-		EVENT_PADDING = getResources().getDimensionPixelSize(R.dimen.half_margin);
+		scheduleLayout = new ScheduleLayout(HOUR_HEIGHT / 60f, HOUR_HEIGHT / 2f);    //extra padding at top, like time lines
 		drawTimeLines();
 		drawCells();
 		scrollToNow();
@@ -149,13 +139,36 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 	}
 
 	/**
-	 * Unregister as listener to avoid memory leaks.
+	 * Listen for changes to events on {@link #date} until the view is destroyed.
 	 */
 	@Override
-	public void onDestroyView()
+	public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState)
 	{
-		super.onDestroyView();
-		NotificationCenter.DEFAULT.unregister(this);
+		super.onViewCreated(view, savedInstanceState);
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventSelectionChanged.class, date, new Callback<NotificationCenter.EventSelectionChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventSelectionChanged eventSelectionChanged)
+			{
+				onEventSelectionChanged(eventSelectionChanged);
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady e)
+			{
+				redrawEvents();
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(getViewLifecycleOwner(), NotificationCenter.EventCatalogChanged.class, date, new Callback<NotificationCenter.EventCatalogChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventCatalogChanged e)
+			{
+				redrawEvents();
+			}
+		});
 	}
 	/**
 	 * Draw all the time lines, one line for each hour in {@link #HOURS} and adds them to {@link #scheduleContainer}.
@@ -174,7 +187,8 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 		}
 	}
 	/**
-	 * Draws all selected events in order.
+	 * Positions all selected events in order using {@link #scheduleLayout}, then gives them to
+	 * {@link #scheduleView} to draw.
 	 */
 	private void drawCells()
 	{
@@ -184,92 +198,70 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 				selectedEvents.add(event);
 		Collections.sort(selectedEvents);
 
-		if (selectedEvents.isEmpty())
-			return;
-		drawEvent(1, new SparseArray<Event>(), new ArrayDeque<>(selectedEvents));
+		intervals.clear();
+		for (Event event : selectedEvents)
+			intervals.add(intervalForEvent(event));
+		scheduleView.setCells(cellsForIntervals(intervals));
 	}
 	/**
-	 * Recursive function. Each iteration draws an event and adds it to {@link #eventsContainer}.
-	 *
-	 * Terminology:
-	 * Slot = column which events are assigned. Starts from 0.
-	 *
-	 * Specifically:
-	 * 1. Finds the best slot to put this event in based on conflicts with other events. If all available
-	 *    slots are full, creates a new slot. The slots in which events are placed are shouldActUpon to earlier
-	 *    events in case its margins are updated (the new event shrinks the previous event's width when
-	 *    a new slot is created).
-	 * 2. Creates the event cell ({@link View}).
-	 * 3. If there are more events, calculate their slots too. If the new event won't overlap with this
-	 *    one, it automatically is assigned the entire width (numSlots = 1).
-	 * 4. Sets event margins, text, listener. Stores in appropriate data structures.
-	 * 5. Returns numSlots and eventForSlot to the parent with relevant new positioning info.
+	 * Adds or removes a single event. Only events in the clusters the event overlaps can move, so only
+	 * they are positioned and drawn again.
 	 *
-	 * @param numSlots Number of slots currently available to events. Starts from 1.
-	 * @param eventForSlot A map of events occupying a given slot. Note: slots CAN be empty (return null).
-	 * @param events The remaining events to position on screen.
-	 * @return numSlots and eventForSlot to alert the previous event.
+	 * @param event Event that was selected or unselected.
 	 */
-	private Pair<Integer, SparseArray<Event>> drawEvent(int numSlots, SparseArray<Event> eventForSlot, Queue<Event> events)
+	private void redrawEvent(Event event)
 	{
-		Event event = events.poll();
-		int slot = slotForEvent(event, numSlots, eventForSlot);
-
-		int newNumSlots = numSlots;
-		SparseArray<Event> newEventForSlot = eventForSlot.clone();
-		newEventForSlot.append(slot, event);
-
-		//if this event was assigned to a slot equal to the current number of slots, resize the current number of slots
-		if (slot == numSlots)
-			newNumSlots += 1;
+		int index = -1;
+		for (int i = 0; i < intervals.size() && index < 0; i++)
+			if (intervals.get(i).getItem().equals(event))
+				index = i;
+		boolean selected = UserData.selectedEvents.contains(event);
+		if (selected == (index >= 0))
+			return;
 
-		//before processing future events, create the schedule cell for this event so future schedule cells can reference it in recursion
-		LayoutInflater inflater = LayoutInflater.from(getContext());
-		View scheduleCell = inflater.inflate(R.layout.cell_schedule, eventsContainer, false);
-		scheduleCell.setId(eventToId(event));
+		ScheduleLayout.Interval<Event> interval = selected ? intervalForEvent(event) : intervals.get(index);
+		int[] range = ScheduleLayout.clusterRange(intervals, interval.getStart(), interval.getEnd());
+		int from = selected ? range[0] : Math.min(range[0], index);
+		int to = selected ? range[1] : Math.max(range[1], index + 1);
 
-		//if there's a later event, process that before we can calculate the position of the current event
-		if (!events.isEmpty())
+		List<ScheduleLayout.Interval<Event>> cluster = new ArrayList<>(intervals.subList(from, to));
+		if (selected)
 		{
-			Event nextEvent = events.peek();
-			if (areEventOverlaps(nextEvent, newNumSlots, newEventForSlot))
-			{
-				Pair<Integer, SparseArray<Event>> recursiveData = drawEvent(newNumSlots, newEventForSlot, events);
-				newNumSlots = recursiveData.first;
-				newEventForSlot = recursiveData.second;
-			}
-			else
-				drawEvent(1, new SparseArray<Event>(), events);
+			int insertAt = 0;
+			while (insertAt < cluster.size() && cluster.get(insertAt).getItem().compareTo(event) <= 0)
+				insertAt++;
+			cluster.add(insertAt, interval);
 		}
+		else
+			cluster.remove(index - from);
 
-		//actually drawing the event cell
-		scheduleCell.setLayoutParams(scheduleCellMargins(scheduleCell, event, slot, newNumSlots, eventForSlot, newEventForSlot));
-		scheduleCell.setOnClickListener(this);
-		if (eventOngoing(event))
-			scheduleCell.setBackground(ContextCompat.getDrawable(getContext(), R.drawable.bg_schedule_cell_ripple));
-		TextView required = scheduleCell.findViewById(R.id.requiredLabel);
-		TextView time = scheduleCell.findViewById(R.id.timeText);
-		TextView title = scheduleCell.findViewById(R.id.titleText);
-		TextView location = scheduleCell.findViewById(R.id.locationText);
-		if (UserData.requiredForUser(event))
-			required.setVisibility(View.VISIBLE);
-		time.setText(event.getStartTime().toString("h:mm") + " - " + event.getEndTime().toString("h:mm a"));
-		title.setText(event.getName());
-		location.setText(event.getLocation());
-		compressEventText(scheduleCell, title, location, time);
-		eventsContainer.addView(scheduleCell);
-		pkHashToEvent.put(event.getPk().hashCode(), event);
-
-		//the parent event wants to know if any new events have been added to the right of it, but not beneath it. Therefore, only let the parent know of slots that are added, not replaced. This way it expands to the right by the correct value.
-		SparseArray<Event> parentEventForSlot = eventForSlot.clone();
-		for (int i = 0; i < newEventForSlot.size(); i++)
+		intervals.subList(from, to).clear();
+		intervals.addAll(from, cluster);
+		scheduleView.replaceCells(from, to, cellsForIntervals(cluster));
+	}
+	/**
+	 * Returns the times of the event in minutes, relative to the first time line.
+	 */
+	private ScheduleLayout.Interval<Event> intervalForEvent(Event event)
+	{
+		int start = minutesBetween(HOURS.get(0), event.getStartTime());
+		return new ScheduleLayout.Interval<>(event, start, start + minutesBetween(event.getStart(), event.getEnd()));
+	}
+	/**
+	 * Positions the events with {@link #scheduleLayout}.
+	 * @param intervals Sorted chronologically. Must contain entire clusters.
+	 * @return Cells for {@link #scheduleView}, in the same order.
+	 */
+	private List<ScheduleView.Cell> cellsForIntervals(List<ScheduleLayout.Interval<Event>> intervals)
+	{
+		List<ScheduleView.Cell> cells = new ArrayList<>(intervals.size());
+		for (ScheduleLayout.Box<Event> box : scheduleLayout.layout(intervals))
 		{
-			int slotToCheck = newEventForSlot.keyAt(i);
-			if (canUseSlot(slotToCheck, event, parentEventForSlot))
-				parentEventForSlot.put(slotToCheck, newEventForSlot.get(slotToCheck));
+			Event event = box.getItem();
+			cells.add(new ScheduleView.Cell(event, box.getLeftFraction(), box.getWidthFraction(), (int) box.getTop(),
+					(int) box.getHeight(), UserData.requiredForUser(event), eventOngoing(event)));
 		}
-
-		return new Pair<>(newNumSlots, parentEventForSlot);
+		return cells;
 	}
 
 	/**
@@ -299,211 +291,6 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 		return layoutParams;
 	}
 
-	/**
-	 * Layout the margins for a scheduleCell
-	 *
-	 * @param scheduleCell Cell for which the event is represented. MUST be child of {@link PercentRelativeLayout}
-	 * @param event Event used to find height and top margin.
-	 * @param slot The column the schedule cell is in. Range from [0, numSlots)
-	 * @param numSlots Number of columns of schedule cells.
-	 * @param eventForSlot Required to left side of current scheduleCell. newEventForSlot may have different cell to the left of the event.
-	 * @param newEventForSlot Required to see how much more space current scheduleCell can expand to on its right side.
-	 * @return LayoutParams for a scheduleCell
-	 */
-	private PercentRelativeLayout.LayoutParams scheduleCellMargins(View scheduleCell, Event event, int slot, int numSlots, SparseArray<Event> eventForSlot, SparseArray<Event> newEventForSlot)
-	{
-		PercentRelativeLayout.LayoutParams layoutParams = (PercentRelativeLayout.LayoutParams) scheduleCell.getLayoutParams();
-
-		//left margin
-		if (slot == 0)
-			layoutParams.addRule(PercentRelativeLayout.ALIGN_PARENT_LEFT);
-		else
-			layoutParams.addRule(PercentRelativeLayout.RIGHT_OF, eventToId(eventForSlot.get(slot - 1)));
-
-		//top margin
-		layoutParams.addRule(PercentRelativeLayout.ALIGN_PARENT_TOP);
-		layoutParams.topMargin = (int) marginTopForStartTime(event.getStartTime());
-
-		//width
-		layoutParams.getPercentLayoutInfo().widthPercent = widthPercent(event, slot, numSlots, newEventForSlot);
-
-		//height
-		layoutParams.height = heightForEvent(event);
-
-		return layoutParams;
-	}
-
-	/**
-	 * Changes the visibility of the time and location text based on how much space is available
-	 * within the schedule cell. The title will be shown with the highest priority, then the location,
-	 * and then the time.
-	 *
-	 * @param scheduleCell Container for event view
-	 * @param title TextView of event title
-	 * @param location TextView of event location
-	 * @param time TextView of event time
-	 * @see #drawEvent(int, SparseArray, Queue)
-	 */
-	private void compressEventText(final View scheduleCell, final TextView title, final TextView location, final TextView time)
-	{
-		title.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener()
-		{
-			//used to ensure onPreDraw() is only called once
-			boolean drawn = false;
-
-			@Override
-			public boolean onPreDraw()
-			{
-				if (title.getLayout() == null)
-					return true;
-				if (drawn)
-					return true;
-				drawn = true;
-
-				int numLinesUsed = title.getLayout().getLineCount();
-				int numLinesAvailable = availableLinesForEvent(scheduleCell.getLayoutParams().height, title);
-				int numLinesRemaining = numLinesAvailable - numLinesUsed;
-
-				if (numLinesRemaining <= 0)
-				{
-					//only have room to show title
-					title.setMaxLines(numLinesAvailable);
-					location.setVisibility(View.GONE);
-					time.setVisibility(View.GONE);
-				}
-				else if (numLinesRemaining == 1)
-				{
-					//only have 1 line left to show location
-					location.setMaxLines(1);
-					time.setVisibility(View.GONE);
-				}
-				else if (numLinesRemaining == 2)
-				{
-					//2 lines, one for time, one for location
-					location.setMaxLines(1);
-					time.setMaxLines(1);
-				}
-				//can't really handle the other logic, since we don't know how many lines
-				//location or time take up
-
-				return true;
-			}
-		});
-	}
-
-	/**
-	 * Returns the best slot for a given event based on the events that were already placed. The leftmost
-	 * unoccupied slot will be chosen, unless all slots are occupied, in which case the slot returned
-	 * will be out of range.
-	 *
-	 * @param event The event that we want to find a slot for.
-	 * @param numSlots The current # of slots assigned to events. The more slots, the skinnier the
-	 *                 events will appear. numSlot = 1 means each event takes up the entire width.
-	 * @param eventForSlot The events that are currently assigned to each slot.
-	 * @return The best slot to put this event in.
-	 */
-	private int slotForEvent(Event event, int numSlots, SparseArray<Event> eventForSlot)
-	{
-		for (int i = 0; i < numSlots; i++)
-			if (canUseSlot(i, event, eventForSlot))
-				return i;
-		return numSlots;
-	}
-	/**
-	 * Returns false if the given event can fit into every available slot. That means the event should
-	 * be placed below, not next to, the current available events.
-	 *
-	 * @param event The event that we test every slot's event against.
-	 * @param numSlots The current # of slots assigned to events.
-	 * @param eventForSlot The events that are currently assigned to each slot.
-	 * @return True if there exists a slot that this event cannot use.
-	 */
-	private boolean areEventOverlaps(Event event, int numSlots, SparseArray<Event> eventForSlot)
-	{
-		for (int i = 0; i < numSlots; i++)
-			if (!canUseSlot(i, event, eventForSlot))
-				return true;
-		return false;
-	}
-	/**
-	 * Returns true if the given event can be fitted into this slot. There are 3 ways this can happen:
-	 * 1. The slot is empty.
-	 * 2. The event in the slot ends before this event starts.
-	 * 3. The event in the slot starts after this event ends.
-	 *
-	 * @param slot The slot we plan to put the event in.
-	 * @param event The event we want to put in the slot.
-	 * @param eventForSlot The events that are currently assigned to each slot.
-	 * @return True if the event can use the slot.
-	 */
-	private boolean canUseSlot(int slot, Event event, SparseArray<Event> eventForSlot)
-	{
-		return eventForSlot.get(slot) == null
-				|| event.getStart() - eventForSlot.get(slot).getEnd() >= 0
-				|| eventForSlot.get(slot).getStart() - event.getEnd() >= 0;
-	}
-	/**
-	 * Distance from the top for a given event based on its start time.
-	 * @param startTime {@link Event#getStartTime()}
-	 * @return Distance from the top (in pixels)
-	 */
-	private float marginTopForStartTime(LocalTime startTime)
-	{
-		int minutesFrom7 = minutesBetween(HOURS.get(0), startTime);
-		return ((float) HOUR_HEIGHT) / 60.0f * ((float) minutesFrom7) + ((float) HOUR_HEIGHT) / 2;
-	}
-	/**
-	 * Returns how wide an event should be based on the number of slots and whether or not there are
-	 * events to the right of this one that this would conflict with. An event will attempt to occupy
-	 * all available space to its right.
-	 *
-	 * @param event The event to determine the widthPercent for.
-	 * @param slot The slot the event occupies.
-	 * @param numSlots The current # of slots assigned to events.
-	 * @param eventForSlot The events that are currently assigned to each slot.
-	 * @return The % of the width of the parent view that the event is allowed to take up.
-	 */
-	private float widthPercent(Event event, int slot, int numSlots, SparseArray<Event> eventForSlot)
-	{
-		float occupiedSlots = 1;
-		int nextSlot = slot + 1;
-		while (canUseSlot(nextSlot, event, eventForSlot) && nextSlot < numSlots)
-		{
-			occupiedSlots += 1;
-			nextSlot += 1;
-		}
-		return occupiedSlots / ((float) numSlots);
-	}
-	/**
-	 * Returns how tall an event should be based on its length.
-	 * @param event The event to determine the height for.
-	 * @return Height of the event in pixels.
-	 */
-	private int heightForEvent(Event event)
-	{
-		int minutes = minutesBetween(event.getStart(), event.getEnd());
-		double height = ((double) HOUR_HEIGHT) / 60.0 * ((double) minutes);
-		return (int) height;
-	}
-
-	/**
-	 * Returns the number of lines that will display fully for the event, rounded down.
-	 * @param containerHeight The height of the event's container, calculated by {@link #heightForEvent(Event)}.
-	 * @param titleText The TextView containing the event's title, {@link com.cornellsatech.o_week.R.id#titleText}.
-	 * @return Number of lines that will display fully, minimum of 0.
-	 */
-	private int availableLinesForEvent(int containerHeight, TextView titleText)
-	{
-		//temporarily change the text to see how tall it is
-		CharSequence originalText = titleText.getText();
-		titleText.setText("A");
-		Paint.FontMetrics fontMetrics = titleText.getPaint().getFontMetrics();
-		float height = fontMetrics.bottom - fontMetrics.top;
-		titleText.setText(originalText);
-
-		return (int) ((containerHeight - EVENT_PADDING * 2) / height);
-	}
-
 	/**
 	 * Converts an hour (that a time line represents) into the time line's view ID. This is required
 	 * since view IDs must be positive (rule of Android), but we must accept hour 0.
@@ -515,30 +302,6 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 	{
 		return hour + 1;
 	}
-	/**
-	 * Returns the view ID of an event, which is based on {@link Event#getPk()}, known to be unique.
-	 * However, since view IDs 0 to 24 (+1) may already be occupied by hours, we must add 31 so the
-	 * view IDs do not conflict.
-	 *
-	 * @param event Event that we want to know the view ID of.
-	 * @return The view ID of the event.
-	 */
-	@IdRes
-	private int eventToId(Event event)
-	{
-		return event.getPk().hashCode() + 31;
-	}
-	/**
-	 * Returns the event that is associated with the a view's ID.
-	 * @param id The view ID of the scheduleCell.
-	 * @return The event the cell represents.
-	 */
-	private Event idToEvent(int id)
-	{
-		int pk = id - 31;
-		return pkHashToEvent.get(pk);
-	}
-
 	/**
 	 * Returns whether or not the event is currently ongoing.
 	 * @param event Event to check
@@ -579,46 +342,31 @@ public class ScheduleFragment extends Fragment implements View.OnClickListener
 		return (int) (end - start) / 60000;
 	}
 	/**
-	 * Opens {@link DetailsActivity} for an event if the event's corresponding scheduleCell was clicked.
-	 * @param v {@inheritDoc}
+	 * Opens {@link DetailsActivity} for an event if the event's cell was clicked.
+	 * @param event Event of the clicked cell.
 	 */
 	@Override
-	public void onClick(View v)
+	public void execute(Event event)
 	{
-		Event event = idToEvent(v.getId());
-		if (event == null)
-		{
-			Log.e(TAG, "onClick: non-scheduleCell view clicked");
-			return;
-		}
-
-		//start details
 		DetailsActivity.startWithEvent(event, getContext());
 	}
 	/**
-	 * Listener for the selection or deselection of an event. This means we might need to display more
-	 * or fewer events.
-	 * @param eventSelectionChanged Ignored.
+	 * Listener for the selection or deselection of events on {@link #date}. This means we might need to
+	 * display more or fewer events. Redraws only around the changed event if there is one.
+	 * @param eventSelectionChanged Contains the changed event, if only one changed.
 	 */
-	@Subscribe
-	public void onEventSelectionChanged(NotificationCenter.EventSelectionChanged eventSelectionChanged)
+	private void onEventSelectionChanged(NotificationCenter.EventSelectionChanged eventSelectionChanged)
 	{
-		redrawEvents();
-	}
-	/**
-	 * Listener for an update from the database.
-	 */
-	@Subscribe
-	public void onInternetUpdate(NotificationCenter.EventInternetUpdate e)
-	{
-	    redrawEvents();
+		if (eventSelectionChanged.event == null)
+			redrawEvents();
+		else
+			redrawEvent(eventSelectionChanged.event);
 	}
 	/**
-	 * Removes all scheduleCells and redraws them.
+	 * Repositions and redraws all events.
 	 */
 	private void redrawEvents()
 	{
-		eventsContainer.removeAllViews();
 		drawCells();
 	}
 
@@ -0,0 +1,232 @@
+package com.cornellsatech.o_week;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import lombok.Value;
+
+/**
+ * Positions the events of {@link ScheduleFragment}, with height proportional to their length, side by side
+ * should their times overlap. Knows nothing about views or {@link com.cornellsatech.o_week.models.Event}s,
+ * so it can be run anywhere.
+ *
+ * Terminology:
+ * Column = vertical strip that events are assigned to. Starts from 0.
+ * Cluster = group of events linked by overlaps. Every event in a cluster has the same number of columns;
+ *           an event that starts after every event in the cluster ends starts a new cluster.
+ *
+ * Intervals are swept once in order of start time:
+ * 1. Events that ended are removed from their columns, found using a min-heap of end times.
+ * 2. The event is put in the leftmost free column, found using a min-heap of free columns, or a new column
+ *    if there are none.
+ * 3. The event stretches right until the first column holding an event it overlaps. Since only events
+ *    in progress can overlap, only the occupied columns are checked, in both directions.
+ * Assigning columns takes O(n log n) time; finding spans adds O(number of columns) per event.
+ *
+ * {@link #pixelsPerMinute}: Height of a minute.
+ * {@link #topOffset}: Distance from the top of minute 0.
+ */
+final class ScheduleLayout
+{
+	private final float pixelsPerMinute;
+	private final float topOffset;
+
+	ScheduleLayout(float pixelsPerMinute, float topOffset)
+	{
+		this.pixelsPerMinute = pixelsPerMinute;
+		this.topOffset = topOffset;
+	}
+
+	/**
+	 * An item to position, lasting from {@link #start} until {@link #end}, in minutes.
+	 * An item ending when another starts does not overlap it.
+	 */
+	@Value
+	static class Interval<T>
+	{
+		private final T item;
+		private final int start;
+		private final int end;
+	}
+
+	/**
+	 * Where an item is drawn.
+	 *
+	 * {@link #column}: The leftmost column the item occupies.
+	 * {@link #span}: Number of columns the item occupies, at least 1.
+	 * {@link #columnCount}: Number of columns in the item's cluster.
+	 * {@link #top}: Distance from the top, in pixels.
+	 * {@link #height}: Height, in pixels.
+	 */
+	@Value
+	static class Box<T>
+	{
+		private final T item;
+		private final int column;
+		private final int span;
+		private final int columnCount;
+		private final float top;
+		private final float height;
+
+		/**
+		 * Returns the distance from the left, as a fraction of the total width.
+		 */
+		float getLeftFraction()
+		{
+			return (float) column / columnCount;
+		}
+
+		/**
+		 * Returns the width, as a fraction of the total width.
+		 */
+		float getWidthFraction()
+		{
+			return (float) span / columnCount;
+		}
+	}
+
+	/**
+	 * An interval that has been assigned a column. {@link #limit} is the first column to the right that
+	 * holds an overlapping interval, and shrinks as overlapping intervals are found.
+	 */
+	private static class Placed<T>
+	{
+		private final Interval<T> interval;
+		private final int column;
+		private int limit = Integer.MAX_VALUE;
+
+		private Placed(Interval<T> interval, int column)
+		{
+			this.interval = interval;
+			this.column = column;
+		}
+	}
+
+	/**
+	 * Positions every interval.
+	 *
+	 * @param intervals Sorted by start.
+	 * @return A box for each interval, in the same order.
+	 */
+	<T> List<Box<T>> layout(List<Interval<T>> intervals)
+	{
+		List<Box<T>> boxes = new ArrayList<>(intervals.size());
+		List<Placed<T>> cluster = new ArrayList<>();
+		List<Placed<T>> columns = new ArrayList<>();     //interval in progress in each column, or null
+		PriorityQueue<Integer> freeColumns = new PriorityQueue<>();
+		PriorityQueue<Placed<T>> inProgress = new PriorityQueue<>(11, new Comparator<Placed<T>>()
+		{
+			@Override
+			public int compare(Placed<T> placed1, Placed<T> placed2)
+			{
+				return Integer.compare(placed1.interval.end, placed2.interval.end);
+			}
+		});
+
+		for (Interval<T> interval : intervals)
+		{
+			while (!inProgress.isEmpty() && inProgress.peek().interval.end <= interval.start)
+			{
+				Placed<T> ended = inProgress.poll();
+				columns.set(ended.column, null);
+				freeColumns.add(ended.column);
+			}
+			//nothing in progress, so this interval can't overlap anything in the cluster
+			if (inProgress.isEmpty())
+			{
+				addBoxes(cluster, columns.size(), boxes);
+				cluster.clear();
+				columns.clear();
+				freeColumns.clear();
+			}
+
+			int column;
+			if (freeColumns.isEmpty())
+			{
+				column = columns.size();
+				columns.add(null);
+			}
+			else
+				column = freeColumns.poll();
+
+			Placed<T> placed = new Placed<>(interval, column);
+			for (int i = 0; i < columns.size(); i++)
+			{
+				Placed<T> other = columns.get(i);
+				if (other == null)
+					continue;
+				if (i > column)
+					placed.limit = Math.min(placed.limit, i);
+				else if (i < column)
+					other.limit = Math.min(other.limit, column);
+			}
+			columns.set(column, placed);
+			inProgress.add(placed);
+			cluster.add(placed);
+		}
+		addBoxes(cluster, columns.size(), boxes);
+		return boxes;
+	}
+
+	/**
+	 * Finds the clusters an interval from start to end overlaps. Adding or removing that interval can only
+	 * move intervals in those clusters, so only they need to be positioned again.
+	 *
+	 * @param intervals Sorted by start.
+	 * @param start Start of the interval, in minutes.
+	 * @param end End of the interval, in minutes.
+	 * @return Index of the first interval of the first cluster overlapped, and the index after the last
+	 *         interval of the last cluster overlapped. If no clusters are overlapped, both are the index
+	 *         the interval would be inserted at.
+	 */
+	static <T> int[] clusterRange(List<Interval<T>> intervals, int start, int end)
+	{
+		int from = -1;
+		int to = -1;
+		int insertAt = 0;
+		int clusterStart = 0;
+		int clusterEnd = Integer.MIN_VALUE;
+		for (int i = 0; i <= intervals.size(); i++)
+		{
+			boolean newCluster = i == intervals.size() || intervals.get(i).start >= clusterEnd;
+			//check the cluster that just finished, treating an empty interval as lasting a minute
+			if (newCluster && i > 0 && intervals.get(clusterStart).start < Math.max(end, start + 1) && start < clusterEnd)
+			{
+				if (from < 0)
+					from = clusterStart;
+				to = i;
+			}
+			if (i == intervals.size())
+				break;
+
+			if (intervals.get(i).start <= start)
+				insertAt = i + 1;
+			if (newCluster)
+			{
+				clusterStart = i;
+				clusterEnd = intervals.get(i).end;
+			}
+			else
+				clusterEnd = Math.max(clusterEnd, intervals.get(i).end);
+		}
+		if (from < 0)
+			return new int[]{insertAt, insertAt};
+		return new int[]{from, to};
+	}
+
+	/**
+	 * Creates boxes for a finished cluster, now that its number of columns is known.
+	 */
+	private <T> void addBoxes(List<Placed<T>> cluster, int columnCount, List<Box<T>> boxes)
+	{
+		for (Placed<T> placed : cluster)
+		{
+			Interval<T> interval = placed.interval;
+			int span = Math.min(placed.limit, columnCount) - placed.column;
+			boxes.add(new Box<>(interval.item, placed.column, span, columnCount,
+					topOffset + interval.start * pixelsPerMinute, (interval.end - interval.start) * pixelsPerMinute));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.cornellsatech.o_week;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.core.content.res.ResourcesCompat;
+
+import com.cornellsatech.o_week.models.Event;
+
+/**
+ * Decides which text of a {@link ScheduleView} cell fits, and lays it out. When there isn't enough room,
+ * text is removed in this order: time, then location, then lines of the title.
+ *
+ * Font metrics are measured once, so fitting a cell only lays out its text, and doesn't need the cell to
+ * be drawn first. Paints can't be shared between threads, so each thread fitting cells needs its own instance.
+ *
+ * {@link #titleLineHeight}: Height of a line of the title, from the title paint's font metrics.
+ */
+final class ScheduleText
+{
+	private final TextPaint timePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	private final TextPaint titlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	private final TextPaint locationPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	private final int padding;
+	private final int requiredSize;
+	private final float titleLineHeight;
+
+	/**
+	 * Text of a cell, laid out for the cell's size.
+	 *
+	 * {@link #timeLayout}: Null if the time doesn't fit.
+	 * {@link #locationLayout}: Null if the location doesn't fit.
+	 * {@link #titleLines}: Number of lines of {@link #titleLayout} to draw.
+	 * {@link #locationLines}: Number of lines of {@link #locationLayout} to draw.
+	 */
+	static class Fit
+	{
+		final int width;
+		final int height;
+		@Nullable
+		final StaticLayout timeLayout;
+		final StaticLayout titleLayout;
+		@Nullable
+		final StaticLayout locationLayout;
+		final int titleLines;
+		final int locationLines;
+
+		private Fit(int width, int height, @Nullable StaticLayout timeLayout, StaticLayout titleLayout, int titleLines,
+		            @Nullable StaticLayout locationLayout, int locationLines)
+		{
+			this.width = width;
+			this.height = height;
+			this.timeLayout = timeLayout;
+			this.titleLayout = titleLayout;
+			this.titleLines = titleLines;
+			this.locationLayout = locationLayout;
+			this.locationLines = locationLines;
+		}
+
+		/**
+		 * Returns whether this text was laid out for a cell of the given size.
+		 */
+		boolean isFor(int width, int height)
+		{
+			return this.width == width && this.height == height;
+		}
+	}
+
+	ScheduleText(Context context)
+	{
+		Resources resources = context.getResources();
+		padding = resources.getDimensionPixelSize(R.dimen.half_margin);
+		requiredSize = resources.getDimensionPixelSize(R.dimen.size_small_required_label);
+
+		int white = ContextCompat.getColor(context, android.R.color.white);
+		Typeface demiBold = ResourcesCompat.getFont(context, R.font.avenir_next_demi_bold);
+		setUpPaint(timePaint, ResourcesCompat.getFont(context, R.font.avenir_next_medium), resources.getDimension(R.dimen.size_title), white);
+		setUpPaint(titlePaint, Typeface.create(demiBold, Typeface.BOLD), resources.getDimension(R.dimen.size_title), white);
+		setUpPaint(locationPaint, ResourcesCompat.getFont(context, R.font.avenir_next_regular), resources.getDimension(R.dimen.size_caption), white);
+
+		Paint.FontMetrics fontMetrics = titlePaint.getFontMetrics();
+		titleLineHeight = fontMetrics.bottom - fontMetrics.top;
+	}
+
+	private static void setUpPaint(TextPaint paint, @Nullable Typeface typeface, float size, int color)
+	{
+		paint.setTypeface(typeface);
+		paint.setTextSize(size);
+		paint.setColor(color);
+	}
+
+	/**
+	 * Lays out the text of an event for a cell. Each time text is removed, the remaining text is given
+	 * more room, as follows:
+	 * 1. Title lines fill the cell: only the title, cut to the lines that fit.
+	 * 2. 1 line left: the title, and 1 line of location.
+	 * 3. 2 lines left: the time, the title, and 1 line of location.
+	 * 4. More lines left: everything. The location may be cut off by the bottom of the cell.
+	 *
+	 * @param event Event of the cell.
+	 * @param required Whether the required label is shown, which the time and title must make room for.
+	 * @param width Width of the cell, in pixels.
+	 * @param height Height of the cell, in pixels.
+	 * @return Text to draw.
+	 */
+	Fit fit(Event event, boolean required, int width, int height)
+	{
+		int contentWidth = Math.max(0, width - padding * 2);
+		int titleWidth = Math.max(0, required ? contentWidth - requiredSize : contentWidth);
+		StaticLayout titleLayout = layoutText(event.getName(), titlePaint, titleWidth);
+		int linesUsed = titleLayout.getLineCount();
+		int linesAvailable = Math.max(0, (int) ((height - padding * 2) / titleLineHeight));
+		int linesRemaining = linesAvailable - linesUsed;
+
+		if (linesRemaining <= 0)
+			return new Fit(width, height, null, titleLayout, linesAvailable, null, 0);
+
+		StaticLayout locationLayout = layoutText(event.getLocation(), locationPaint, contentWidth);
+		int locationLines = linesRemaining <= 2 ? 1 : Integer.MAX_VALUE;
+		if (linesRemaining == 1)
+			return new Fit(width, height, null, titleLayout, linesUsed, locationLayout, locationLines);
+
+		String time = event.getStartTime().toString("h:mm") + " - " + event.getEndTime().toString("h:mm a");
+		StaticLayout timeLayout = layoutText(TextUtils.ellipsize(time, timePaint, titleWidth, TextUtils.TruncateAt.END), timePaint, titleWidth);
+		return new Fit(width, height, timeLayout, titleLayout, linesUsed, locationLayout, locationLines);
+	}
+
+	/**
+	 * Lays out text with the same spacing as a {@link android.widget.TextView}.
+	 * @param text May be null, in which case the layout is empty.
+	 */
+	private static StaticLayout layoutText(@Nullable CharSequence text, TextPaint paint, int width)
+	{
+		if (text == null)
+			text = "";
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+			return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width).build();
+		return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1, 0, true);
+	}
+}
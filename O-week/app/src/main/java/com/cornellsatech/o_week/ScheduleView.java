@@ -0,0 +1,460 @@
+package com.cornellsatech.o_week;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.core.content.res.ResourcesCompat;
+
+import com.cornellsatech.o_week.models.Event;
+import com.cornellsatech.o_week.util.Callback;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws the events of {@link ScheduleFragment} directly onto a canvas, instead of inflating a view for
+ * each event. Positions are given by the fragment as {@link Cell}s, so nothing here decides where an
+ * event goes; this view only draws cells and finds which one was touched.
+ *
+ * Each cell shows the time, title, and location in white, with a required label in the top right.
+ * Only cells within the canvas's clip bounds are drawn.
+ *
+ * Text is fit to each cell by {@link ScheduleText} before it is drawn, not while drawing: whenever cells
+ * or the width change, every cell is fit on {@link #TEXT_THREAD}. A cell on screen that must be drawn
+ * before its text is ready is fit on the main thread instead, so visible text never appears late. Cells
+ * off screen are drawn without text until theirs is ready.
+ *
+ * {@link #cells}: Cells to draw, sorted by {@link Cell#top}. Owned by this view; the lists given are copied.
+ * {@link #text}: Fits text on the main thread.
+ * {@link #backgroundText}: Fits text on {@link #TEXT_THREAD}. Paints can't be shared between threads.
+ * {@link #fitGeneration}: Incremented whenever cells or the width change, so text fit for old cells is dropped.
+ * {@link #rippleCell}: The last cell touched. It is drawn with {@link #ripple} so the ripple can finish
+ *                      animating after the touch ends.
+ * {@link #pressedCell}: The cell currently being touched, or null.
+ */
+public class ScheduleView extends View
+{
+	private static final ExecutorService TEXT_THREAD = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("schedule-text").setDaemon(true).build());
+	private final ScheduleText text;
+	private final ScheduleText backgroundText;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private volatile int fitGeneration = 0;
+	private final TextPaint requiredPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	private final Paint requiredBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final Drawable background;
+	private final Drawable ongoingBackground;
+	private final int padding;
+	private final int timeHeight;
+	private final int requiredSize;
+	private final String requiredText;
+	private final Rect clipBounds = new Rect();
+	private final Rect visibleBounds = new Rect();
+	private final List<Cell> cells = new ArrayList<>();
+	@Nullable
+	private Cell rippleCell;
+	@Nullable
+	private Drawable ripple;
+	@Nullable
+	private Cell pressedCell;
+	@Nullable
+	private Callback<Event> onEventClickListener;
+
+	/**
+	 * Where an event is drawn, and what it looks like.
+	 *
+	 * {@link #left}: Distance from the left, as a fraction of the view's width.
+	 * {@link #width}: Width, as a fraction of the view's width.
+	 * {@link #top}: Distance from the top, in pixels.
+	 * {@link #height}: Height, in pixels.
+	 * {@link #ongoing}: True if the event is happening now, which is drawn in a stronger color.
+	 * {@link #bounds}: Position in pixels, for the current width. Empty until the width is known.
+	 * {@link #fit}: Text laid out for {@link #bounds}. Null or for another size until fit.
+	 */
+	static class Cell
+	{
+		final Event event;
+		final float left;
+		final float width;
+		final int top;
+		final int height;
+		final boolean required;
+		final boolean ongoing;
+		private final RectF bounds = new RectF();
+		@Nullable
+		private ScheduleText.Fit fit;
+
+		Cell(Event event, float left, float width, int top, int height, boolean required, boolean ongoing)
+		{
+			this.event = event;
+			this.left = left;
+			this.width = width;
+			this.top = top;
+			this.height = height;
+			this.required = required;
+			this.ongoing = ongoing;
+		}
+
+		/**
+		 * Returns whether both cells would be drawn the same way, so the other's text can be kept.
+		 */
+		boolean sameContents(Cell other)
+		{
+			return event == other.event && left == other.left && width == other.width && top == other.top
+					&& height == other.height && required == other.required && ongoing == other.ongoing;
+		}
+	}
+
+	public ScheduleView(Context context)
+	{
+		this(context, null);
+	}
+
+	public ScheduleView(Context context, @Nullable AttributeSet attrs)
+	{
+		super(context, attrs);
+		text = new ScheduleText(context);
+		backgroundText = new ScheduleText(context);
+		padding = getResources().getDimensionPixelSize(R.dimen.half_margin);
+		timeHeight = getResources().getDimensionPixelSize(R.dimen.height_schedule_cell_time);
+		requiredSize = getResources().getDimensionPixelSize(R.dimen.size_small_required_label);
+		requiredText = getResources().getString(R.string.required_label);
+		background = ContextCompat.getDrawable(context, R.drawable.bg_schedule_cell_faded);
+		ongoingBackground = ContextCompat.getDrawable(context, R.drawable.bg_schedule_cell);
+
+		requiredPaint.setTypeface(ResourcesCompat.getFont(context, R.font.avenir_next_demi_bold));
+		requiredPaint.setTextSize(getResources().getDimension(R.dimen.size_small_required_label_text));
+		requiredPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+		requiredPaint.setTextAlign(Paint.Align.CENTER);
+		requiredBackgroundPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+	}
+
+	/**
+	 * Replaces the cells to draw.
+	 * @param cells Sorted by {@link Cell#top}.
+	 */
+	void setCells(List<Cell> cells)
+	{
+		this.cells.clear();
+		this.cells.addAll(cells);
+		pressedCell = null;
+		rippleCell = null;
+		positionCells();
+		invalidate();
+	}
+
+	/**
+	 * Replaces some of the cells, and only redraws if one of them changed. Replaced cells that would be
+	 * drawn the same way are kept, along with their text layouts.
+	 *
+	 * @param from Index of the first cell to replace.
+	 * @param to Index after the last cell to replace.
+	 * @param newCells Sorted by {@link Cell#top}, and fitting between the cells before and after.
+	 */
+	void replaceCells(int from, int to, List<Cell> newCells)
+	{
+		List<Cell> oldCells = cells.subList(from, to);
+		boolean changed = false;
+		List<Cell> keptCells = new ArrayList<>(newCells.size());
+		for (Cell newCell : newCells)
+		{
+			Cell keptCell = newCell;
+			for (Cell oldCell : oldCells)
+				if (oldCell.sameContents(newCell))
+					keptCell = oldCell;
+			keptCells.add(keptCell);
+			changed |= keptCell == newCell;
+		}
+		for (Cell oldCell : oldCells)
+		{
+			if (keptCells.contains(oldCell))
+				continue;
+			if (oldCell == pressedCell)
+				pressedCell = null;
+			if (oldCell == rippleCell)
+				rippleCell = null;
+			changed = true;
+		}
+		oldCells.clear();
+		cells.addAll(from, keptCells);
+		positionCells();
+		//dirty rectangles are ignored with hardware acceleration, so the whole view is redrawn
+		if (changed)
+			invalidate();
+	}
+
+	/**
+	 * @param listener Executed with the event of a cell that was clicked.
+	 */
+	void setOnEventClickListener(@Nullable Callback<Event> listener)
+	{
+		onEventClickListener = listener;
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh)
+	{
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (w != oldw)
+			positionCells();
+	}
+
+	/**
+	 * Sets the bounds of every cell for the current width, then fits the text of cells that don't have
+	 * text for their size on {@link #TEXT_THREAD}. Does nothing until the width is known.
+	 */
+	private void positionCells()
+	{
+		int viewWidth = getWidth();
+		if (viewWidth == 0)
+			return;
+		final List<Cell> unfitCells = new ArrayList<>();
+		final List<Integer> widths = new ArrayList<>();     //cell bounds may change while fitting, so copy them
+		for (Cell cell : cells)
+		{
+			cell.bounds.set(cell.left * viewWidth, cell.top, (cell.left + cell.width) * viewWidth, cell.top + cell.height);
+			if (!hasFit(cell))
+			{
+				unfitCells.add(cell);
+				widths.add(cellWidth(cell));
+			}
+		}
+
+		final int generation = ++fitGeneration;
+		if (unfitCells.isEmpty())
+			return;
+		TEXT_THREAD.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final List<ScheduleText.Fit> fits = new ArrayList<>(unfitCells.size());
+				for (int i = 0; i < unfitCells.size(); i++)
+				{
+					if (generation != fitGeneration)
+						return;
+					Cell cell = unfitCells.get(i);
+					fits.add(backgroundText.fit(cell.event, cell.required, widths.get(i), cell.height));
+				}
+				mainHandler.post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (generation != fitGeneration)
+							return;
+						//cells drawn in the meantime were already fit on the main thread
+						for (int i = 0; i < unfitCells.size(); i++)
+						{
+							Cell cell = unfitCells.get(i);
+							if (!hasFit(cell))
+								cell.fit = fits.get(i);
+						}
+						invalidate();
+					}
+				});
+			}
+		});
+	}
+
+	private static int cellWidth(Cell cell)
+	{
+		return (int) cell.bounds.width();
+	}
+
+	/**
+	 * Returns whether the cell has text for its current size.
+	 */
+	private static boolean hasFit(Cell cell)
+	{
+		return cell.fit != null && cell.fit.isFor(cellWidth(cell), cell.height);
+	}
+
+	/**
+	 * Draws every cell that overlaps the clip bounds. Cells are sorted by top, so drawing stops at the
+	 * first cell below the bounds.
+	 */
+	@Override
+	protected void onDraw(Canvas canvas)
+	{
+		super.onDraw(canvas);
+		if (!canvas.getClipBounds(clipBounds))
+			return;
+		boolean visible = getLocalVisibleRect(visibleBounds);
+		for (Cell cell : cells)
+		{
+			if (cell.top > clipBounds.bottom)
+				break;
+			if (cell.top + cell.height < clipBounds.top)
+				continue;
+			if (!hasFit(cell) && visible && cell.top <= visibleBounds.bottom && cell.top + cell.height >= visibleBounds.top)
+				cell.fit = text.fit(cell.event, cell.required, cellWidth(cell), cell.height);
+			drawCell(canvas, cell);
+		}
+	}
+
+	private void drawCell(Canvas canvas, Cell cell)
+	{
+		Drawable cellBackground = cell == rippleCell && ripple != null ? ripple : cell.ongoing ? ongoingBackground : background;
+		cellBackground.setBounds((int) cell.bounds.left, (int) cell.bounds.top, (int) cell.bounds.right, (int) cell.bounds.bottom);
+		cellBackground.draw(canvas);
+
+		if (hasFit(cell))
+			drawFit(canvas, cell.fit, cell.bounds);
+
+		if (cell.required)
+		{
+			float radius = requiredSize / 2f;
+			float centerX = cell.bounds.right - padding - radius;
+			float centerY = cell.bounds.top + padding + radius;
+			canvas.drawCircle(centerX, centerY, radius, requiredBackgroundPaint);
+			canvas.drawText(requiredText, centerX, centerY - (requiredPaint.ascent() + requiredPaint.descent()) / 2, requiredPaint);
+		}
+	}
+
+	/**
+	 * Draws the time, title, and location within the padding of the cell's bounds.
+	 */
+	private void drawFit(Canvas canvas, ScheduleText.Fit fit, RectF bounds)
+	{
+		int save = canvas.save();
+		canvas.clipRect(bounds.left + padding, bounds.top + padding, bounds.right - padding, bounds.bottom - padding);
+		float x = bounds.left + padding;
+		float y = bounds.top + padding;
+		if (fit.timeLayout != null)
+		{
+			drawText(canvas, fit.timeLayout, 1, x, y);
+			y += timeHeight;
+		}
+		y += drawText(canvas, fit.titleLayout, fit.titleLines, x, y);
+		if (fit.locationLayout != null)
+			drawText(canvas, fit.locationLayout, fit.locationLines, x, y);
+		canvas.restoreToCount(save);
+	}
+
+	/**
+	 * Draws at most the given number of lines of the layout.
+	 * @return Height of the lines drawn.
+	 */
+	private float drawText(Canvas canvas, StaticLayout layout, int maxLines, float x, float y)
+	{
+		int lines = Math.min(maxLines, layout.getLineCount());
+		if (lines <= 0)
+			return 0;
+		int height = layout.getLineBottom(lines - 1);
+		int save = canvas.save();
+		canvas.translate(x, y);
+		canvas.clipRect(0, 0, layout.getWidth(), height);
+		layout.draw(canvas);
+		canvas.restoreToCount(save);
+		return height;
+	}
+
+	/**
+	 * Finds the cell at the given point. Cells drawn later are on top, so they're checked first.
+	 * @return Cell, or null if there is none.
+	 */
+	@Nullable
+	private Cell cellAt(float x, float y)
+	{
+		for (int i = cells.size() - 1; i >= 0; i--)
+		{
+			Cell cell = cells.get(i);
+			if (cell.bounds.contains(x, y))
+				return cell;
+		}
+		return null;
+	}
+
+	/**
+	 * Presses the touched cell, and opens it if the touch ends on the same cell. Touches outside cells
+	 * are not handled, so the enclosing scroll view still receives them.
+	 */
+	@Override
+	public boolean onTouchEvent(MotionEvent e)
+	{
+		switch (e.getActionMasked())
+		{
+			case MotionEvent.ACTION_DOWN:
+				pressedCell = cellAt(e.getX(), e.getY());
+				if (pressedCell == null)
+					return false;
+				setRipple(pressedCell, e.getX(), e.getY());
+				return true;
+			case MotionEvent.ACTION_MOVE:
+				if (pressedCell != null && cellAt(e.getX(), e.getY()) != pressedCell)
+					release();
+				return pressedCell != null;
+			case MotionEvent.ACTION_UP:
+				Cell clickedCell = pressedCell;
+				release();
+				if (clickedCell == null)
+					return false;
+				performClick();
+				if (onEventClickListener != null)
+					onEventClickListener.execute(clickedCell.event);
+				return true;
+			case MotionEvent.ACTION_CANCEL:
+				release();
+				return false;
+			default:
+				return pressedCell != null;
+		}
+	}
+
+	@Override
+	public boolean performClick()
+	{
+		return super.performClick();
+	}
+
+	/**
+	 * Starts a ripple on the cell from the given point.
+	 */
+	private void setRipple(Cell cell, float x, float y)
+	{
+		if (rippleCell != cell)
+		{
+			if (ripple != null)
+				ripple.setCallback(null);
+			ripple = ContextCompat.getDrawable(getContext(), cell.ongoing ? R.drawable.bg_schedule_cell_ripple : R.drawable.bg_schedule_cell_faded_ripple);
+			ripple.setCallback(this);
+			rippleCell = cell;
+		}
+		ripple.setBounds((int) cell.bounds.left, (int) cell.bounds.top, (int) cell.bounds.right, (int) cell.bounds.bottom);
+		ripple.setHotspot(x, y);
+		ripple.setState(new int[]{android.R.attr.state_pressed, android.R.attr.state_enabled});
+		invalidate();
+	}
+
+	private void release()
+	{
+		pressedCell = null;
+		if (ripple != null)
+			ripple.setState(new int[]{android.R.attr.state_enabled});
+		invalidate();
+	}
+
+	@Override
+	protected boolean verifyDrawable(@NonNull Drawable who)
+	{
+		return who == ripple || super.verifyDrawable(who);
+	}
+}
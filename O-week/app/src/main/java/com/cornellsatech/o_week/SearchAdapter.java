@@ -5,6 +5,7 @@ import android.view.ViewGroup;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cornellsatech.o_week.models.Event;
@@ -43,6 +44,23 @@ public class SearchAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         notifyDataSetChanged();
     }
 
+    /**
+     * Same as {@link #updateEventsAndHeaders(List, List)}, but only rebinds the cells in the diff.
+     * @param diff Difference between {@link #getEvents()} and the given events.
+     */
+    public void updateEventsAndHeaders(List<Event> events, List<Integer> headerCellIndexes, DiffUtil.DiffResult diff) {
+        this.events = events;
+        this.headerCellIndexes = headerCellIndexes;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * @return Events currently displayed, with null at header indices. Don't mutate.
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
     /**
      * Depending on type, returns a {@link HeaderCell} or {@link FeedCell} to be displayed
      *
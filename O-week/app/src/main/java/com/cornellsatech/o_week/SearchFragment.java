@@ -16,26 +16,21 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.cornellsatech.o_week.models.Event;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-
 /**
  * Search Fragment that displays search results from my calender and feed.
  * This is a {@link Fragment} so that it can be  swapped out with {@link SearchFragment}
  * Layout in {@link com.cornellsatech.o_week.R.layout#fragment_search}
  * {@link #MIN_NUM_LETTERS} Minimum letters that must be typed in search bar to cause a refresh
+ * {@link #searchPipeline} Runs searches in the background and updates {@link #searchAdapter}
  */
 
-public class SearchFragment extends Fragment implements SearchView.OnQueryTextListener, MenuItem.OnActionExpandListener
+public class SearchFragment extends Fragment implements SearchView.OnQueryTextListener, MenuItem.OnActionExpandListener,
+		SearchPipeline.Listener
 {
 	private LinearLayout emptyView;
 	private RecyclerView searchRecycler;
 	private SearchAdapter searchAdapter;
+	private SearchPipeline searchPipeline;
 	private static final int MIN_NUM_LETTERS = 3;
 	private static final String TAG = SearchFragment.class.getSimpleName();
 
@@ -83,7 +78,7 @@ public class SearchFragment extends Fragment implements SearchView.OnQueryTextLi
 	}
 
 	/**
-	 * Display events that match search query
+	 * Display events that match search query, using {@link #searchPipeline}.
 	 * Note: events list is the length of all events + header cells
 	 */
 	@Override
@@ -92,58 +87,23 @@ public class SearchFragment extends Fragment implements SearchView.OnQueryTextLi
 		//If what the user types is nothing or is less than MIN_NUM_LETTERS
 		if (searchText == null || searchText.length() < MIN_NUM_LETTERS)
 		{
-			clearSearchPage();
-			return false;
-		}
-
-		List<Event> events = new ArrayList<>();
-		String searchTextLowercase = searchText.toLowerCase();
-
-		//Add events that contains search text
-		for (Event event : UserData.allEvents)
-		{
-			if (event.getName().toLowerCase().contains(searchTextLowercase)
-					|| event.getDescription().toLowerCase().contains(searchTextLowercase)
-					|| event.getLocation().toLowerCase().contains(searchTextLowercase)
-					|| event.getAdditional().toLowerCase().contains(searchTextLowercase))
-				events.add(event);
-		}
-		//If Events List is empty, remove headers
-		if (events.isEmpty())
-		{
-			clearSearchPage();
+			searchPipeline.clear();
 			return false;
 		}
-		emptyView.setVisibility(View.GONE);
 
-		//Separate events into user's events and non user events
-		List<Event> nonUserEvents = new ArrayList<>(events.size());
-		Iterator<Event> userEventsIterator = events.iterator();
-		while (userEventsIterator.hasNext())
-		{
-			Event event = userEventsIterator.next();
-			if (!UserData.selectedEvents.contains(event)) {
-				nonUserEvents.add(event);
-				userEventsIterator.remove();
-			}
-		}
-		Collections.sort(events);
-		Collections.sort(nonUserEvents);
-
-		//Combine user's events & non-users events into 1 list
-		//Note: Added null at header indices to make it easy to access events at correct index
-		int userEventsSize = events.size();
-		events.addAll(nonUserEvents);
-		events.add(0, null);
-		int headerIndex2 = userEventsSize + 1;
-		events.add(headerIndex2, null);
-
-		//Pass updated events list & header indices list to Search Adapter
-		List<Integer> headerIndices = Arrays.asList(0, headerIndex2);
-		searchAdapter.updateEventsAndHeaders(events, headerIndices);
+		searchPipeline.search(searchText);
 		return true;
 	}
 
+	/**
+	 * Shows the empty view if the latest search had no results.
+	 */
+	@Override
+	public void onResults(boolean empty)
+	{
+		emptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+	}
+
 	@Override
 	public boolean onMenuItemActionExpand(MenuItem menuItem)
 	{
@@ -164,15 +124,17 @@ public class SearchFragment extends Fragment implements SearchView.OnQueryTextLi
 		searchAdapter = new SearchAdapter();
 		searchRecycler.setLayoutManager(new LinearLayoutManager(getActivity()));
 		searchRecycler.setAdapter(searchAdapter);
+		searchPipeline = new SearchPipeline(searchAdapter, this);
 	}
 
 	/**
-	 * Search page displays empty view & removes headers
+	 * Stop searching, since there's no view to show results in.
 	 */
-	private void clearSearchPage()
+	@Override
+	public void onDestroyView()
 	{
-		emptyView.setVisibility(View.VISIBLE);
-		searchAdapter.updateEventsAndHeaders(Collections.<Event>emptyList(), Collections.<Integer>emptyList());
+		super.onDestroyView();
+		searchPipeline.shutdown();
 	}
 
 }
@@ -0,0 +1,299 @@
+package com.cornellsatech.o_week;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.cornellsatech.o_week.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the text of every event, used by {@link SearchFragment}. Each field is split into
+ * lowercase words, and each word points to the events containing it. Since words are kept sorted, every
+ * word starting with a prefix can be found with a single range lookup, so queries take time proportional
+ * to the number of matches, not the number of events.
+ *
+ * Matches are ranked by the field they were found in ({@link Field}), so events whose names match come
+ * before events whose descriptions match.
+ *
+ * All methods are synchronized, so the index can be built on a background thread and queried on the main thread.
+ *
+ * {@link #postings}: For each word, the pks of events containing it, and a bitmask of the {@link Field}s
+ *                    it appears in.
+ * {@link #eventForPk}: Every indexed event.
+ * {@link #wordsForPk}: Every word indexed for each event, so an event can be removed without a scan.
+ * {@link #version}: Incremented on every change, so results can tell if they're out of date.
+ */
+public class SearchIndex
+{
+	private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+	private final Map<String, Event> eventForPk = new HashMap<>();
+	private final Map<String, Set<String>> wordsForPk = new HashMap<>();
+	private int version = 0;
+
+	/**
+	 * Fields of an event that are indexed. {@link #weight} is both the field's bit in a posting's mask
+	 * and its rank; higher weights rank first.
+	 */
+	enum Field
+	{
+		NAME(8), LOCATION(4), DESCRIPTION(2), ADDITIONAL(1);
+
+		private final int weight;
+
+		Field(int weight)
+		{
+			this.weight = weight;
+		}
+	}
+
+	public SearchIndex() {}
+
+	/**
+	 * Creates an index of the given events.
+	 */
+	public SearchIndex(Iterable<Event> events)
+	{
+		for (Event event : events)
+			add(event);
+	}
+
+	/**
+	 * Indexes the event, replacing any event with the same pk.
+	 */
+	public synchronized void add(Event event)
+	{
+		remove(event.getPk());
+		Set<String> words = new HashSet<>();
+		addField(event, Field.NAME, event.getName(), words);
+		addField(event, Field.LOCATION, event.getLocation(), words);
+		addField(event, Field.DESCRIPTION, event.getDescription(), words);
+		addField(event, Field.ADDITIONAL, event.getAdditional(), words);
+		wordsForPk.put(event.getPk(), words);
+		eventForPk.put(event.getPk(), event);
+		version++;
+	}
+
+	public synchronized void addAll(Collection<Event> events)
+	{
+		for (Event event : events)
+			add(event);
+	}
+
+	/**
+	 * Removes the event with the given pk. Does nothing if it wasn't indexed.
+	 * @param pk {@link Event#getPk()}
+	 */
+	public synchronized void remove(String pk)
+	{
+		eventForPk.remove(pk);
+		Set<String> words = wordsForPk.remove(pk);
+		if (words == null)
+			return;
+		version++;
+		for (String word : words)
+		{
+			Map<String, Integer> pks = postings.get(word);
+			if (pks == null)
+				continue;
+			pks.remove(pk);
+			if (pks.isEmpty())
+				postings.remove(word);
+		}
+	}
+
+	/**
+	 * Removes deleted events and re-indexes changed ones.
+	 * @param diff Changes merged into {@link UserData#allEvents}.
+	 */
+	public synchronized void apply(EventDiff diff)
+	{
+		for (String pk : diff.getDeletedPks())
+			remove(pk);
+		addAll(diff.getChangedEvents());
+	}
+
+	/**
+	 * Finds events where every word of the query starts a word in one of the event's fields.
+	 *
+	 * @param query Text typed by the user. Case and punctuation are ignored.
+	 * @return Matching events, best match first. Events match better if the query's words are found in
+	 *         higher ranked {@link Field}s. Ties are ordered chronologically.
+	 */
+	public synchronized List<Event> search(String query)
+	{
+		List<String> prefixes = tokenize(query);
+		if (prefixes.isEmpty())
+			return Collections.emptyList();
+
+		Map<String, Integer> scores = null;
+		for (String prefix : prefixes)
+		{
+			Map<String, Integer> prefixScores = scoresForPrefix(prefix);
+			if (scores == null)
+				scores = prefixScores;
+			else
+			{
+				//only keep events matching every word so far
+				Map<String, Integer> intersection = new HashMap<>();
+				for (Map.Entry<String, Integer> entry : scores.entrySet())
+				{
+					Integer score = prefixScores.get(entry.getKey());
+					if (score != null)
+						intersection.put(entry.getKey(), entry.getValue() + score);
+				}
+				scores = intersection;
+			}
+			if (scores.isEmpty())
+				return Collections.emptyList();
+		}
+
+		return rank(scores);
+	}
+
+	/**
+	 * Same as {@link #search(String)}, but only checks the given events. Use this when the query only adds
+	 * to a previous query, since any event matching it must have matched the previous query too.
+	 *
+	 * @param previousResults Results of a previous query that the new query starts with. Must have been
+	 *                        returned when {@link #getVersion()} was the same as now.
+	 * @param query Text typed by the user.
+	 * @return Matching events, best match first.
+	 */
+	public synchronized List<Event> refine(List<Event> previousResults, String query)
+	{
+		List<String> prefixes = tokenize(query);
+		if (prefixes.isEmpty())
+			return Collections.emptyList();
+
+		Map<String, Integer> scores = new HashMap<>();
+		for (Event event : previousResults)
+		{
+			Set<String> words = wordsForPk.get(event.getPk());
+			if (words == null)
+				continue;
+			int score = 0;
+			for (String prefix : prefixes)
+			{
+				int prefixScore = 0;
+				for (String word : words)
+					if (word.startsWith(prefix))
+						prefixScore = Math.max(prefixScore, Integer.highestOneBit(postings.get(word).get(event.getPk())));
+				if (prefixScore == 0)
+				{
+					score = 0;
+					break;
+				}
+				score += prefixScore;
+			}
+			if (score > 0)
+				scores.put(event.getPk(), score);
+		}
+		return rank(scores);
+	}
+
+	/**
+	 * Returns a number that changes whenever an event is added or removed.
+	 */
+	public synchronized int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Sorts matched events by score, best first, then chronologically.
+	 * @param scores Score of each matched pk.
+	 */
+	private List<Event> rank(final Map<String, Integer> scores)
+	{
+		List<Event> results = new ArrayList<>(scores.size());
+		for (String pk : scores.keySet())
+			results.add(eventForPk.get(pk));
+		Collections.sort(results, new Comparator<Event>()
+		{
+			@Override
+			public int compare(Event event1, Event event2)
+			{
+				int compareScore = Integer.compare(scores.get(event2.getPk()), scores.get(event1.getPk()));
+				if (compareScore != 0)
+					return compareScore;
+				return event1.compareTo(event2);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Returns every event with a word starting with the prefix, scored by the highest ranked field the
+	 * word appears in.
+	 */
+	private Map<String, Integer> scoresForPrefix(String prefix)
+	{
+		Map<String, Integer> scores = new HashMap<>();
+		SortedMap<String, Map<String, Integer>> words = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+		for (Map<String, Integer> pks : words.values())
+		{
+			for (Map.Entry<String, Integer> entry : pks.entrySet())
+			{
+				int score = Integer.highestOneBit(entry.getValue());
+				Integer previous = scores.get(entry.getKey());
+				if (previous == null || previous < score)
+					scores.put(entry.getKey(), score);
+			}
+		}
+		return scores;
+	}
+
+	private void addField(Event event, Field field, @Nullable String text, Set<String> words)
+	{
+		for (String word : tokenize(text))
+		{
+			Map<String, Integer> pks = postings.get(word);
+			if (pks == null)
+			{
+				pks = new HashMap<>();
+				postings.put(word, pks);
+			}
+			Integer mask = pks.get(event.getPk());
+			pks.put(event.getPk(), mask == null ? field.weight : mask | field.weight);
+			words.add(word);
+		}
+	}
+
+	/**
+	 * Splits text into lowercase words made of letters and digits.
+	 * @param text May be null.
+	 * @return Words, in order. May contain duplicates.
+	 */
+	@NonNull
+	static List<String> tokenize(@Nullable String text)
+	{
+		List<String> words = new ArrayList<>();
+		if (text == null)
+			return words;
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++)
+		{
+			boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (wordChar && start < 0)
+				start = i;
+			else if (!wordChar && start >= 0)
+			{
+				words.add(text.substring(start, i).toLowerCase(Locale.getDefault()));
+				start = -1;
+			}
+		}
+		return words;
+	}
+}
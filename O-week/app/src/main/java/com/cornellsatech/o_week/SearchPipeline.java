@@ -0,0 +1,235 @@
+package com.cornellsatech.o_week;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.cornellsatech.o_week.models.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs queries from {@link SearchFragment} off the main thread and hands the results to {@link SearchAdapter}
+ * as a diff, so only rows that changed are rebound.
+ * 1. Debounce: A query only runs once the user stops typing for {@link #DEBOUNCE_MILLIS}.
+ * 2. Cancel: Each query gets a generation number. Results of a query that has been replaced are dropped,
+ *            and a replaced query that hasn't started yet is skipped.
+ * 3. Refine: If the query extends the last one (the user typed more letters), only the last results are
+ *            checked with {@link SearchIndex#refine(List, String)}.
+ * 4. Diff: The new rows are compared with the adapter's rows on the worker thread.
+ *
+ * {@link #generation}: Incremented on the main thread for every new query or clear. Only read on the worker.
+ * {@link #lastQuery}: Query whose results are {@link #lastResults}. Only accessed on the worker.
+ * {@link #lastVersion}: {@link SearchIndex#getVersion()} when {@link #lastResults} were found.
+ */
+class SearchPipeline
+{
+	private static final long DEBOUNCE_MILLIS = 150;
+	private final SearchAdapter adapter;
+	private final Listener listener;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final ExecutorService worker = Executors.newSingleThreadExecutor();
+	private volatile int generation = 0;
+	@Nullable
+	private Runnable pendingQuery;
+	@Nullable
+	private String lastQuery;
+	private List<Event> lastResults = Collections.emptyList();
+	private int lastVersion;
+
+	/**
+	 * Told whether the latest query had any results, so the empty state can be shown.
+	 */
+	interface Listener
+	{
+		@MainThread
+		void onResults(boolean empty);
+	}
+
+	SearchPipeline(SearchAdapter adapter, Listener listener)
+	{
+		this.adapter = adapter;
+		this.listener = listener;
+	}
+
+	/**
+	 * Queues a query, replacing any query that hasn't finished.
+	 * @param query Text typed by the user.
+	 */
+	@MainThread
+	void search(final String query)
+	{
+		final int queryGeneration = ++generation;
+		if (pendingQuery != null)
+			mainHandler.removeCallbacks(pendingQuery);
+		pendingQuery = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				pendingQuery = null;
+				//selection only changes on the main thread, so copy it for the worker
+				final Set<Event> selectedEvents = new HashSet<>(UserData.selectedEvents);
+				final SearchIndex index = UserData.searchIndex;
+				final List<Event> oldRows = adapter.getEvents();
+				worker.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						runQuery(queryGeneration, query, index, selectedEvents, oldRows);
+					}
+				});
+			}
+		};
+		mainHandler.postDelayed(pendingQuery, DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Cancels any query in progress and empties the adapter.
+	 */
+	@MainThread
+	void clear()
+	{
+		generation++;
+		if (pendingQuery != null)
+			mainHandler.removeCallbacks(pendingQuery);
+		pendingQuery = null;
+		adapter.updateEventsAndHeaders(Collections.<Event>emptyList(), Collections.<Integer>emptyList());
+		listener.onResults(true);
+	}
+
+	/**
+	 * Stops the worker. No results will be delivered afterwards.
+	 */
+	@MainThread
+	void shutdown()
+	{
+		generation++;
+		if (pendingQuery != null)
+			mainHandler.removeCallbacks(pendingQuery);
+		worker.shutdownNow();
+	}
+
+	@WorkerThread
+	private void runQuery(final int queryGeneration, String query, SearchIndex index, Set<Event> selectedEvents,
+	                      final List<Event> oldRows)
+	{
+		if (queryGeneration != generation)
+			return;
+
+		int version = index.getVersion();
+		List<Event> results;
+		if (lastQuery != null && query.startsWith(lastQuery) && version == lastVersion)
+			results = index.refine(lastResults, query);
+		else
+			results = index.search(query);
+		lastQuery = query;
+		lastResults = results;
+		lastVersion = version;
+
+		if (queryGeneration != generation)
+			return;
+		if (results.isEmpty())
+		{
+			mainHandler.post(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (queryGeneration == generation)
+						clear();
+				}
+			});
+			return;
+		}
+
+		//Separate events into user's events and non user events, keeping the order of matches
+		//Note: Added null at header indices to make it easy to access events at correct index
+		final List<Event> rows = new ArrayList<>(results.size() + 2);
+		List<Event> nonUserEvents = new ArrayList<>(results.size());
+		rows.add(null);
+		for (Event event : results)
+		{
+			if (selectedEvents.contains(event))
+				rows.add(event);
+			else
+				nonUserEvents.add(event);
+		}
+		final int headerIndex2 = rows.size();
+		rows.add(null);
+		rows.addAll(nonUserEvents);
+
+		final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiff(oldRows, rows));
+		mainHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				//the adapter may have been cleared since the diff was calculated
+				if (queryGeneration != generation || adapter.getEvents() != oldRows)
+					return;
+				adapter.updateEventsAndHeaders(rows, Arrays.asList(0, headerIndex2), diff);
+				listener.onResults(false);
+			}
+		});
+	}
+
+	/**
+	 * Compares rows of {@link SearchAdapter}. Headers are null; the first row is always the first header,
+	 * and any other null is the second header.
+	 */
+	private static class RowDiff extends DiffUtil.Callback
+	{
+		private final List<Event> oldRows;
+		private final List<Event> newRows;
+
+		private RowDiff(List<Event> oldRows, List<Event> newRows)
+		{
+			this.oldRows = oldRows;
+			this.newRows = newRows;
+		}
+
+		@Override
+		public int getOldListSize()
+		{
+			return oldRows.size();
+		}
+
+		@Override
+		public int getNewListSize()
+		{
+			return newRows.size();
+		}
+
+		@Override
+		public boolean areItemsTheSame(int oldPosition, int newPosition)
+		{
+			Event oldEvent = oldRows.get(oldPosition);
+			Event newEvent = newRows.get(newPosition);
+			if (oldEvent == null || newEvent == null)
+				return oldEvent == null && newEvent == null && (oldPosition == 0) == (newPosition == 0);
+			return oldEvent.equals(newEvent);
+		}
+
+		/**
+		 * Events are immutable, so an event with the same pk but a different instance was updated.
+		 */
+		@Override
+		public boolean areContentsTheSame(int oldPosition, int newPosition)
+		{
+			return oldRows.get(oldPosition) == newRows.get(newPosition);
+		}
+	}
+}
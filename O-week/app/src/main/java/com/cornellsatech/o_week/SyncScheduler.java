@@ -0,0 +1,149 @@
+package com.cornellsatech.o_week;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cornellsatech.o_week.util.Callback;
+import com.cornellsatech.o_week.util.Internet;
+import com.cornellsatech.o_week.util.NotificationCenter;
+import com.cornellsatech.o_week.util.Request;
+import com.cornellsatech.o_week.util.Settings;
+
+import org.joda.time.DateTimeConstants;
+
+import java.util.Random;
+
+/**
+ * Downloads updates from the database while the app runs, once every {@link R.integer#sync_interval_minutes}.
+ * A sync is skipped if the last one succeeded within the interval, and requests made while one is
+ * downloading join it instead of starting another. Failed syncs are retried after an exponentially
+ * growing delay, randomized so that clients that failed together don't retry together.
+ * Each step is posted as {@link NotificationCenter.EventSyncStatus}.
+ * Every method must be called on the main thread.
+ *
+ * {@link #inFlight}: Download in progress, or null.
+ * {@link #failures}: Number of syncs that failed in a row since the last one succeeded.
+ * {@link #retryAt}: Time in epoch millis before which syncs are skipped after a failure.
+ */
+final class SyncScheduler
+{
+	private static final long MIN_BACKOFF_MILLIS = 5 * DateTimeConstants.MILLIS_PER_SECOND;
+	private static final long MAX_BACKOFF_MILLIS = 30 * DateTimeConstants.MILLIS_PER_MINUTE;
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+	private static final Random JITTER = new Random();
+	private static final String TAG = SyncScheduler.class.getSimpleName();
+	private static Context appContext;
+	@Nullable
+	private static Request<Long> inFlight;
+	private static int failures = 0;
+	private static long retryAt = 0;
+	private static final Runnable SCHEDULED_SYNC = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			requestSync(appContext, false);
+		}
+	};
+
+	//suppress instantiation
+	private SyncScheduler(){}
+
+	/**
+	 * Downloads updates unless they were downloaded recently, then schedules the next sync.
+	 * Does nothing until {@link UserData#isLoaded()}, since updates are merged into the loaded events.
+	 *
+	 * @param force True to sync even if the last sync was recent or failed, such as when the user asks to.
+	 */
+	static void requestSync(Context context, boolean force)
+	{
+		if (!UserData.isLoaded())
+			return;
+		appContext = context.getApplicationContext();
+		if (inFlight != null)
+			return;
+
+		long now = System.currentTimeMillis();
+		long syncAt = nextSyncAt();
+		if (!force && now < syncAt)
+		{
+			scheduleAt(syncAt, now);
+			NotificationCenter.DEFAULT.post(new NotificationCenter.EventSyncStatus(NotificationCenter.EventSyncStatus.State.SKIPPED, syncAt));
+			return;
+		}
+
+		MAIN_HANDLER.removeCallbacks(SCHEDULED_SYNC);
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventSyncStatus(NotificationCenter.EventSyncStatus.State.RUNNING, 0));
+		final CatalogUpdate update = new CatalogUpdate(appContext);
+		inFlight = Internet.getUpdatesForVersion(Settings.getTimestamp(appContext), update, new Callback<Long>()
+		{
+			//timestamp is 0 if failed
+			@Override
+			public void execute(Long timestamp)
+			{
+				inFlight = null;
+				boolean succeeded = timestamp != null && timestamp != 0;
+				update.finish(succeeded ? timestamp : 0);
+				if (succeeded)
+					onSuccess();
+				else
+					onFailure();
+			}
+		});
+	}
+
+	/**
+	 * Schedules the next sync a full interval from now.
+	 */
+	private static void onSuccess()
+	{
+		long now = System.currentTimeMillis();
+		failures = 0;
+		retryAt = 0;
+		Settings.setLastSync(now, appContext);
+
+		long syncAt = nextSyncAt();
+		scheduleAt(syncAt, now);
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventSyncStatus(NotificationCenter.EventSyncStatus.State.SUCCEEDED, syncAt));
+	}
+
+	/**
+	 * Schedules a retry after a delay that doubles with each failure in a row, up to {@link #MAX_BACKOFF_MILLIS}.
+	 * The delay is picked at random from its upper half.
+	 */
+	private static void onFailure()
+	{
+		long now = System.currentTimeMillis();
+		failures++;
+		long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+		retryAt = now + backoff / 2 + (long) (JITTER.nextDouble() * (backoff / 2));
+		Log.i(TAG, "Sync failed " + failures + " time(s) in a row, retrying in " + (retryAt - now) + " ms");
+
+		scheduleAt(retryAt, now);
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventSyncStatus(NotificationCenter.EventSyncStatus.State.FAILED, retryAt));
+	}
+
+	/**
+	 * Returns when the next sync is due, in epoch millis. Events that were never synced are always due.
+	 */
+	private static long nextSyncAt()
+	{
+		if (failures > 0)
+			return retryAt;
+		long interval = appContext.getResources().getInteger(R.integer.sync_interval_minutes) * (long) DateTimeConstants.MILLIS_PER_MINUTE;
+		return Settings.getLastSync(appContext) + interval;
+	}
+
+	/**
+	 * Replaces the scheduled sync with one at the given time.
+	 */
+	private static void scheduleAt(long syncAt, long now)
+	{
+		MAIN_HANDLER.removeCallbacks(SCHEDULED_SYNC);
+		MAIN_HANDLER.postDelayed(SCHEDULED_SYNC, Math.max(0, syncAt - now));
+	}
+}
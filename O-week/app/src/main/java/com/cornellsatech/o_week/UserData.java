@@ -7,24 +7,24 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 
 import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.CategoryIds;
 import com.cornellsatech.o_week.models.CollegeType;
 import com.cornellsatech.o_week.models.Event;
 import com.cornellsatech.o_week.models.StudentType;
-import com.cornellsatech.o_week.models.VersionUpdate;
-import com.cornellsatech.o_week.util.Callback;
+import com.cornellsatech.o_week.util.EventSnapshot;
 import com.cornellsatech.o_week.util.Internet;
 import com.cornellsatech.o_week.util.NotificationCenter;
 import com.cornellsatech.o_week.util.Notifications;
+import com.cornellsatech.o_week.util.ReminderManifest;
 import com.cornellsatech.o_week.util.Settings;
 import com.google.common.base.Joiner;
 
 import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,26 +33,32 @@ import java.util.Set;
  * Handles all data shared between classes. Many of these variables have associated {@link NotificationCenter}
  * events that should be fired when they are changed, so do so when changing their values.
  *
- * {@link #allEvents}: All events on disk.
+ * {@link #allEvents}: All events on disk, indexed by pk, date, category, and requirement.
+ * {@link #searchIndex}: Words in every event in {@link #allEvents}. Empty until {@link #isLoaded()}.
  * {@link #selectedEvents}: All events selected by the user.
  * {@link #categories}: All categories on disk.
  * {@link #selectedDate}: The date to display events for.
- * {@link #selectedFilters}: An integer set that represents all the currently selected filters.
+ * {@link #selectedFilters}: An integer set that represents all the currently selected filters, as {@link CategoryIds}.
  *                               appear in the feed.
  * {@link #filterRequired}: True if "required events" filter is on.
+ * {@link #unselectedBeforeLoad}: Pks of events the user unselected before {@link #isLoaded()}, which are
+ *                               still saved as selected on disk.
  * {@link #collegeType}: Which college the student belongs in.
  * {@link #studentType}: What kind of student the user is.
  */
 public final class UserData
 {
-	public static Set<Event> allEvents = new HashSet<>();
+	public static EventStore allEvents = new EventStore();
+	public static SearchIndex searchIndex = new SearchIndex();
 	public static final Set<Event> selectedEvents = new HashSet<>();
 	public static Set<Category> categories = new HashSet<>();
 	public static Map<String, String> resourceNameLink = new HashMap<>();
 	public static List<LocalDate> sortedDates = new ArrayList<>();
 	public static LocalDate selectedDate;
-	public static final Set<String> selectedFilters = new HashSet<>();
+	public static final BitSet selectedFilters = new BitSet();
 	public static boolean filterRequired = false;
+	private static boolean loaded = false;
+	private static final Set<String> unselectedBeforeLoad = new HashSet<>();
 	private static CollegeType collegeType = CollegeType.NOTSET;
 	private static StudentType studentType = StudentType.NOTSET;
 	private static final String TAG = UserData.class.getSimpleName();
@@ -61,17 +67,40 @@ public final class UserData
 	private UserData(){}
 
 	/**
-	 * Linear search for an event given its pk value.
+	 * Returns the event given its pk value.
 	 * @param pk {@link Event#getPk()}
 	 * @return Event. May be null.
 	 */
 	@Nullable
 	public static Event eventForPk(String pk) {
-		for (Event event : allEvents)
-			if (event.getPk().equals(pk))
-				return event;
-		Log.e(TAG, "eventForPk: Event not found for given pk");
-		return null;
+		Event event = allEvents.get(pk);
+		if (event == null)
+			Log.e(TAG, "eventForPk: Event not found for given pk");
+		return event;
+	}
+
+	/**
+	 * Adds the event to {@link #selectedEvents}. Use this instead of modifying the set directly, so
+	 * changes made before every event is loaded aren't undone once it is.
+	 *
+	 * @return True if the event wasn't selected.
+	 */
+	public static boolean selectEvent(Event event)
+	{
+		unselectedBeforeLoad.remove(event.getPk());
+		return selectedEvents.add(event);
+	}
+	/**
+	 * Removes the event from {@link #selectedEvents}. Use this instead of modifying the set directly, so
+	 * changes made before every event is loaded aren't undone once it is.
+	 *
+	 * @return True if the event was selected.
+	 */
+	public static boolean unselectEvent(Event event)
+	{
+		if (!loaded)
+			unselectedBeforeLoad.add(event.getPk());
+		return selectedEvents.remove(event);
 	}
 
 	private static void populateSelectedEvents(Set<String> selectedEventsPks)
@@ -82,121 +111,176 @@ public final class UserData
             previousSelectedEventsPks.add(event.getPk());
         previousSelectedEventsPks.addAll(selectedEventsPks);
 		selectedEvents.clear();
-		for (Event event : allEvents)
-			if (previousSelectedEventsPks.contains(event.getPk()))
+		for (String pk : previousSelectedEventsPks)
+		{
+			Event event = allEvents.get(pk);
+			if (event != null)
 				selectedEvents.add(event);
+		}
 	}
 
 	/**
-	 * Loads {@link #allEvents}, {@link #selectedEvents}, {@link #categories}.
-	 * 1. Retrieves all events and categories from disk, adding them to {@link #allEvents}, {@link #categories}.
-	 * 2. Downloads updates from the database.
-	 * 3. Sorts all events and categories. Retrieves selected events. If anything WAS updated from the
-	 *    database, save the updates. Note that after events and categories are saved here, the lists
-	 *    they belong in should not be mutated any further.
+	 * Loads {@link #allEvents}, {@link #selectedEvents}, {@link #categories} in the background.
+	 * Listen for {@link NotificationCenter.EventDataReady} to know when they've been loaded.
 	 *
 	 * @param context
+	 * @see DataBootstrap
 	 */
-	public static void loadData(final Context context)
+	public static void loadData(Context context)
+	{
+		DataBootstrap.start(context);
+	}
+
+	/**
+	 * Returns whether every event and category has been loaded from disk. Until then, {@link #allEvents}
+	 * and {@link #selectedEvents} may only hold the events of a single date.
+	 */
+	public static boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	/**
+	 * Loads the dates and the events of a single date, so the current page can be drawn before the
+	 * rest of the events are read. Does nothing if all events have already been loaded.
+	 *
+	 * @param preview Dates and events read from disk.
+	 * @param selectedEventsPks {@link Settings#getSelectedEventsPks(Context)}
+	 */
+	static void loadPreview(Context context, EventSnapshot.Preview preview, Set<String> selectedEventsPks)
+	{
+		if (loaded)
+			return;
+		loadStudentCollegeTypes(context);
+		setAllEvents(new EventStore(preview.getEvents()));
+		sortedDates = new ArrayList<>(preview.getDates());
+		if (selectedDate == null)
+			selectedDate = preview.getDate();
+		populateSelectedEvents(selectedEventsPks);
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventDataReady(false));
+	}
+
+	/**
+	 * Loads all events and categories, then downloads updates from the database.
+	 * 1. Swaps in events and categories that were read from disk.
+	 * 2. Retrieves selected events, and sets the reminder alarm again.
+	 * 3. Asks {@link SyncScheduler} for updates from the database, unless they were downloaded recently.
+	 *
+	 * @param events Every event on disk, already indexed.
+	 * @param index Search index of every event on disk.
+	 * @param diskCategories Every category on disk.
+	 * @param resources Every resource on disk.
+	 * @param selectedEventsPks {@link Settings#getSelectedEventsPks(Context)}
+	 */
+	static void loadCatalog(final Context context, EventStore events, SearchIndex index, Set<Category> diskCategories,
+	                        Map<String, String> resources, final Set<String> selectedEventsPks)
 	{
 		loadStudentCollegeTypes(context);
 
-        resourceNameLink = Settings.getResources(context);
-        if (resourceNameLink.isEmpty())
-            Internet.getResources(context);
+		resourceNameLink = resources;
+		if (resourceNameLink.isEmpty())
+			Internet.getResources(context);
 
-        allEvents = Settings.getAllEvents(context);
+		setAllEvents(events);
+		searchIndex = index;
 		loadDates();
-		final Set<String> selectedEventsPks = Settings.getSelectedEventsPks(context);
+		//the saved pks were read before the user could change them
+		selectedEventsPks.removeAll(unselectedBeforeLoad);
+		unselectedBeforeLoad.clear();
 		populateSelectedEvents(selectedEventsPks);
+		if (Settings.getReceiveReminders(context))
+		{
+			//reminders scheduled before the queue existed
+			if (!ReminderManifest.exists(context))
+				Notifications.replaceLegacyAlarms(context);
+			//the alarm is erased if the app was force stopped
+			else
+				Notifications.rescheduleForEvents(context);
+		}
+		categories = diskCategories;
+		loaded = true;
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventDataReady(true));
+
+		SyncScheduler.requestSync(context, false);
+	}
 
-		categories = Settings.getCategories(context);
+	/**
+	 * Updates everything that depends on {@link #allEvents} after a batch of changes from the database was
+	 * merged into it: selected events, {@link #sortedDates}, cached day slices and the search index, then
+	 * posts what changed. {@link CatalogUpdate} calls this for every batch, so nothing else ever sees
+	 * events these don't know of. The changes themselves are saved by the update as they're merged.
+	 *
+	 * @param diff Changes that were merged.
+	 * @return True if a selected event was changed or deleted.
+	 */
+	static boolean applyBatch(final EventDiff diff)
+	{
+		if (diff.isEmpty())
+			return false;
+		boolean selectedChanged = false;
+		for (Event event : diff.getChangedEvents())
+		{
+			//swap in the new instance
+			if (selectedEvents.remove(event))
+			{
+				selectedEvents.add(event);
+				selectedChanged = true;
+			}
+		}
+		for (Event event : diff.getDeletedEvents())
+			selectedChanged |= selectedEvents.remove(event);
 
-		Internet.getUpdatesForVersion(Settings.getTimestamp(context),
-                new Callback<VersionUpdate>()
+		if (diff.isDatesChanged())
+			loadDates();
+		DaySliceCache.invalidate(diff.getAffectedDates());
+		DataBootstrap.runOnDiskThread(new Runnable()
 		{
-			//timestamp is 0 if failed
 			@Override
-			public void execute(VersionUpdate update)
+			public void run()
 			{
-				if (update == null || update.getTimestamp() == 0)
-                {
-                    NotificationCenter.DEFAULT.post(new NotificationCenter.EventInternetUpdate());
-                    return;
-                }
-
-				Log.i(TAG, "Received timestamp: " + update.getTimestamp());
-				Log.i(TAG, "Changed events: " + update.getEvents().getChanged().size());
-				//update categories; this works because categories are compared using pk
-				categories.removeAll(update.getCategories().getChanged());
-				categories.addAll(update.getCategories().getChanged());
-				//delete categories
-				Set<Category> categoriesToDelete = new HashSet<>(update.getCategories().getDeleted().size());
-				for (String pk : update.getCategories().getDeleted())
-					categoriesToDelete.add(Category.withPk(pk));
-				categories.removeAll(categoriesToDelete);
-
-				//keep track of all changed events to notify the user
-				Map<String, String> changedEventsPkName = new HashMap<>();
-				//update/remove notifications
-				boolean remindersOn = Settings.getReceiveReminders(context);
-				//update events
-				allEvents.removeAll(update.getEvents().getChanged());
-				allEvents.addAll(update.getEvents().getChanged());
-				for (Event event : update.getEvents().getChanged())
-				{
-					changedEventsPkName.put(event.getPk(), event.getName());
-
-					//reschedule the event
-					if (selectedEvents.remove(event))
-					{
-						selectedEvents.add(event);
-						if (remindersOn)
-							Notifications.scheduleForEvent(event, context);
-					}
-				}
-				//delete events
-				Iterator<Event> eventsIterator = allEvents.iterator();
-				while (eventsIterator.hasNext())
-				{
-					Event event = eventsIterator.next();
-					if (update.getEvents().getDeleted().contains(event.getPk()))
-					{
-						changedEventsPkName.put(event.getPk(), event.getName());
-						eventsIterator.remove();
-
-						//remove the event from notification
-						if (remindersOn)
-							Notifications.unscheduleForEvent(event, context);
-					}
-				}
-
-                loadDates();
-
-				//send a toast to alert the user that their events were updated
-				if (changedEventsPkName.size() != 0)
-				{
-					//show toast only for changed events that you HAD selected
-					List<String> selectedChangedEventsTitles = new ArrayList<>();
-					for (String pk : selectedEventsPks)
-					{
-						String selectedChangedEventTitle = changedEventsPkName.get(pk);
-						if (selectedChangedEventTitle != null)
-							selectedChangedEventsTitles.add(selectedChangedEventTitle);
-					}
-					if (!selectedChangedEventsTitles.isEmpty())
-					{
-						String toastText = context.getString(R.string.toast_events_changed, Joiner.on(", ").join(selectedChangedEventsTitles));
-						Toast.makeText(context, toastText, Toast.LENGTH_LONG).show();
-					}
-				}
-
-				Settings.setAllEvents(context);
-				Settings.setCategories(context);
-				Settings.setTimestamp(update.getTimestamp(), context);
-				NotificationCenter.DEFAULT.post(new NotificationCenter.EventInternetUpdate());
+				searchIndex.apply(diff);
 			}
 		});
+		NotificationCenter.DEFAULT.post(new NotificationCenter.EventCatalogChanged(diff));
+		return selectedChanged;
+	}
+
+	/**
+	 * Finishes an update once every batch has been applied with {@link #applyBatch(EventDiff)}: saves and
+	 * posts categories if they changed, and reschedules reminders if selected events changed. Sends a
+	 * toast to alert the user if any of their selected events were updated.
+	 *
+	 * @param categoryDiff Changes to {@link #categories}, which were merged as they were decoded.
+	 * @param changedEventNames Names of every changed or deleted event, keyed by pk.
+	 * @param selectedChanged True if {@link #applyBatch(EventDiff)} changed any selected event.
+	 * @param selectedEventsPks Pks of events the user had selected before the update.
+	 */
+	static void finishUpdate(Context context, EventDiff categoryDiff, Map<String, String> changedEventNames,
+	                         boolean selectedChanged, Set<String> selectedEventsPks)
+	{
+		Log.i(TAG, "Changed or deleted events: " + changedEventNames.size() + ", categories changed: " + categoryDiff.isCategoriesChanged());
+		if (categoryDiff.isCategoriesChanged())
+		{
+			Settings.setCategories(context);
+			NotificationCenter.DEFAULT.post(new NotificationCenter.EventCatalogChanged(categoryDiff));
+		}
+		//rebuild the reminder queue once for every change
+		if (selectedChanged && Settings.getReceiveReminders(context))
+			Notifications.scheduleForEvents(context);
+
+		//show toast only for changed events that you HAD selected
+		List<String> selectedChangedEventsTitles = new ArrayList<>();
+		for (String pk : selectedEventsPks)
+		{
+			String selectedChangedEventTitle = changedEventNames.get(pk);
+			if (selectedChangedEventTitle != null)
+				selectedChangedEventsTitles.add(selectedChangedEventTitle);
+		}
+		if (!selectedChangedEventsTitles.isEmpty())
+		{
+			String toastText = context.getString(R.string.toast_events_changed, Joiner.on(", ").join(selectedChangedEventsTitles));
+			Toast.makeText(context, toastText, Toast.LENGTH_LONG).show();
+		}
 	}
 
 	/**
@@ -211,6 +295,8 @@ public final class UserData
 		{
 			collegeType = Settings.getStudentSavedCollegeType(context);
 			studentType = Settings.getStudentSavedType(context);
+			allEvents.setUser(collegeType, studentType);
+			DaySliceCache.clear();
 		}
 		catch (IllegalArgumentException e)
 		{
@@ -218,33 +304,38 @@ public final class UserData
 		}
 	}
 
+	/**
+	 * Replaces {@link #allEvents}, telling it which events are required for the user.
+	 */
+	private static void setAllEvents(EventStore events)
+	{
+		allEvents = events;
+		allEvents.setUser(collegeType, studentType);
+		DaySliceCache.clear();
+	}
+
 	private static void loadDates()
 	{
-		Set<LocalDate> dates = new HashSet<>();
-		for (Event event : allEvents)
-			dates.add(event.getStartDate());
-		sortedDates = new ArrayList<>(dates);
-		Collections.sort(sortedDates);
+		sortedDates = allEvents.sortedDates();
+	}
+
+	/**
+	 * Returns all events that are required for the current user.
+	 * @return Unmodifiable set. Empty if the user has not set their college or student type.
+	 */
+	public static Set<Event> requiredEventsForUser()
+	{
+		return allEvents.requiredForUser();
 	}
 
 	/**
-	 * Checks whether the given event is required for the current user
+	 * Checks whether the given event is required for the current user. This is a lookup, since
+	 * {@link #allEvents} keeps track of required events whenever events or the user's types change.
 	 * @param event
 	 * @return true if this event is required for the current user, false otherwise.
 	 */
 	public static boolean requiredForUser(Event event)
 	{
-		if (!event.hasCategory(collegeType))
-			return false;
-
-		switch (studentType)
-		{
-			case FRESHMAN:
-				return event.isFirstYearRequired();
-			case TRANSFER:
-				return event.isTransferRequired();
-		}
-
-		return false;
+		return allEvents.isRequiredForUser(event);
 	}
 }
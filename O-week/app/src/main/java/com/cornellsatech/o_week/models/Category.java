@@ -4,6 +4,10 @@ import androidx.annotation.NonNull;
 
 import com.cornellsatech.o_week.util.Internet;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -75,6 +79,44 @@ public class Category implements Comparable<Category>
 		return GSON.fromJson(json, Category.class);
 	}
 
+	/**
+	 * Decodes the next {@link Category} in a stream of JSON, skipping unknown fields.
+	 *
+	 * @param json Reader positioned at the start of a category object.
+	 * @return {@link Category} created from the object.
+	 * @throws IOException If the stream could not be read or the object is not formatted correctly.
+	 */
+	public static Category fromJSON(JsonReader json) throws IOException
+	{
+		String pk = null;
+		String category = null;
+		json.beginObject();
+		while (json.hasNext())
+		{
+			String field = json.nextName();
+			if (json.peek() == JsonToken.NULL)
+			{
+				json.nextNull();
+				continue;
+			}
+			switch (field)
+			{
+				case "pk":
+					pk = json.nextString();
+					break;
+				case "category":
+					category = json.nextString();
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+		if (pk == null)
+			throw new IOException("Category is missing a pk");
+		return new Category(pk, category);
+	}
+
 	public static Category withPk(String pk) {
 		return new Category(pk, null);
 	}
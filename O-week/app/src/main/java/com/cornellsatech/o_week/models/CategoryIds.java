@@ -0,0 +1,51 @@
+package com.cornellsatech.o_week.models;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns {@link Category#getPk()}s to small integers, so that sets of categories can be stored as
+ * {@link BitSet}s. Ids are assigned in the order pks are first seen, and never change while the app runs.
+ * They are not saved, so never store them on disk.
+ *
+ * {@link #idForPk}: Id of every pk seen so far.
+ *
+ * @see Event#getCategoryBits()
+ */
+public final class CategoryIds
+{
+	private static final Map<String, Integer> idForPk = new HashMap<>();
+
+	//suppress instantiation
+	private CategoryIds(){}
+
+	/**
+	 * Returns the id of the category, assigning a new one if the pk hasn't been seen.
+	 * @param pk {@link Category#getPk()}
+	 * @return Id, starting from 0.
+	 */
+	public static synchronized int idOf(String pk)
+	{
+		Integer id = idForPk.get(pk);
+		if (id == null)
+		{
+			id = idForPk.size();
+			idForPk.put(pk, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns a set with the id of every category.
+	 * @param pks {@link Category#getPk()}s
+	 */
+	public static BitSet bitsOf(Collection<String> pks)
+	{
+		BitSet bits = new BitSet();
+		for (String pk : pks)
+			bits.set(idOf(pk));
+		return bits;
+	}
+}
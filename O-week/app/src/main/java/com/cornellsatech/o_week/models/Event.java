@@ -10,14 +10,20 @@ import android.text.style.StyleSpan;
 import androidx.annotation.NonNull;
 
 import com.cornellsatech.o_week.util.Internet;
+import com.google.common.base.Objects;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import lombok.Getter;
@@ -30,6 +36,7 @@ import lombok.RequiredArgsConstructor;
  *
  * {@link #categories}: The {@link Category#getPk()} of the {@link Category}s this event
  * belongs to.
+ * {@link #categoryBits}: {@link #categories} as {@link CategoryIds}, for fast filtering. Not saved.
  * {@link #start}: Epoch millis of start time in correct Ithaca timezone.
  * {@link #additional}: Additional information to display in a special format. Formatted like so:
  *                      ## HEADER ## ____BULLET # INFO ____BULLET # INFO
@@ -54,6 +61,7 @@ public class Event implements Comparable<Event>
 	private LocalDate startDate;
 	private LocalTime startTime;
 	private LocalTime endTime;
+	private BitSet categoryBits;
 	private final List<String> categories;
 	private final boolean firstYearRequired;
 	private final boolean transferRequired;
@@ -85,6 +93,25 @@ public class Event implements Comparable<Event>
 		return endTime;
 	}
 
+	/**
+	 * Returns the ids of {@link #categories}. Computed once; do not modify.
+	 * @see CategoryIds
+	 */
+	public BitSet getCategoryBits()
+	{
+		if (categoryBits == null)
+			computeCategoryBits();
+		return categoryBits;
+	}
+
+	/**
+	 * Computes {@link #categoryBits} ahead of time, so that filtering never has to.
+	 */
+	public void computeCategoryBits()
+	{
+		categoryBits = CategoryIds.bitsOf(categories);
+	}
+
 	public boolean hasCategory(CollegeType college)
 	{
 		return categories.contains(CollegeType.collegeToPk.get(college));
@@ -158,6 +185,33 @@ public class Event implements Comparable<Event>
 		return other.pk.equals(pk);
 	}
 
+	/**
+	 * Returns whether every field is the same as the other event's, unlike {@link #equals(Object)}, which
+	 * only compares {@link #pk}. Used to tell if an event was changed in an update.
+	 *
+	 * @param other Event to compare to.
+	 * @return True if both events would be displayed the same way.
+	 */
+	public boolean sameContents(Event other)
+	{
+		if (this == other)
+			return true;
+		return pk.equals(other.pk)
+				&& Objects.equal(name, other.name)
+				&& Objects.equal(description, other.description)
+				&& Objects.equal(url, other.url)
+				&& Objects.equal(img, other.img)
+				&& Objects.equal(additional, other.additional)
+				&& Objects.equal(location, other.location)
+				&& Double.compare(longitude, other.longitude) == 0
+				&& Double.compare(latitude, other.latitude) == 0
+				&& start == other.start
+				&& end == other.end
+				&& Objects.equal(categories, other.categories)
+				&& firstYearRequired == other.firstYearRequired
+				&& transferRequired == other.transferRequired;
+	}
+
 	/**
 	 * Compares 2 {@link Event}s using their start times. Useful for ordering chronologically.
 	 */
@@ -184,6 +238,89 @@ public class Event implements Comparable<Event>
 		return GSON.fromJson(json, Event.class);
 	}
 
+	/**
+	 * Decodes the next {@link Event} in a stream of JSON. Fields are read by name without reflection,
+	 * and unknown fields are skipped.
+	 *
+	 * @param json Reader positioned at the start of an event object.
+	 * @return {@link Event} created from the object.
+	 * @throws IOException If the stream could not be read or the object is not formatted correctly.
+	 */
+	public static Event fromJSON(JsonReader json) throws IOException
+	{
+		String pk = null, name = null, description = null, url = null, img = null, additional = null, location = null;
+		double longitude = 0, latitude = 0;
+		long start = 0, end = 0;
+		List<String> categories = new ArrayList<>();
+		boolean firstYearRequired = false, transferRequired = false;
+
+		json.beginObject();
+		while (json.hasNext())
+		{
+			String field = json.nextName();
+			if (json.peek() == JsonToken.NULL)
+			{
+				json.nextNull();
+				continue;
+			}
+			switch (field)
+			{
+				case "pk":
+					pk = json.nextString();
+					break;
+				case "name":
+					name = json.nextString();
+					break;
+				case "description":
+					description = json.nextString();
+					break;
+				case "url":
+					url = json.nextString();
+					break;
+				case "img":
+					img = json.nextString();
+					break;
+				case "additional":
+					additional = json.nextString();
+					break;
+				case "location":
+					location = json.nextString();
+					break;
+				case "longitude":
+					longitude = json.nextDouble();
+					break;
+				case "latitude":
+					latitude = json.nextDouble();
+					break;
+				case "start":
+					start = json.nextLong();
+					break;
+				case "end":
+					end = json.nextLong();
+					break;
+				case "categories":
+					json.beginArray();
+					while (json.hasNext())
+						categories.add(json.nextString());
+					json.endArray();
+					break;
+				case "firstYearRequired":
+					firstYearRequired = json.nextBoolean();
+					break;
+				case "transferRequired":
+					transferRequired = json.nextBoolean();
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+		if (pk == null)
+			throw new IOException("Event is missing a pk");
+		return new Event(pk, name, description, url, img, additional, location, longitude, latitude, start,
+				end, categories, firstYearRequired, transferRequired);
+	}
+
 	public static class EventExclusionStrategy implements ExclusionStrategy
     {
         @Override
@@ -196,6 +333,7 @@ public class Event implements Comparable<Event>
                 case "startDate":
                 case "startTime":
                 case "endTime":
+                case "categoryBits":
                     return true;
                 default:
                     return false;
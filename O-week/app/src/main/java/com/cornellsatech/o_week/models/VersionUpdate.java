@@ -1,11 +1,21 @@
 package com.cornellsatech.o_week.models;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 import lombok.Value;
 
+/**
+ * Changes to events and categories since a given version of the database.
+ *
+ * Updates are decoded with {@link #stream(Reader, Listener)}, which reads one event or category at a
+ * time and hands it to a {@link Listener}, so the response is never held in memory as a whole.
+ */
 @Value
 public class VersionUpdate {
     private static final Gson GSON = new Gson();
@@ -17,6 +27,93 @@ public class VersionUpdate {
         return GSON.fromJson(json, VersionUpdate.class);
     }
 
+    /**
+     * Decodes an update one record at a time. Each changed event or category is fully decoded before
+     * it is passed to the listener, and nothing is kept after that.
+     *
+     * @param json Stream of JSON, formatted like {"events":{"changed":[],"deleted":[]},"categories":{...},"timestamp":0}.
+     * @param listener Receives every change, in the order they appear in the JSON.
+     * @return {@link #timestamp}
+     * @throws IOException If the stream could not be read or is not formatted correctly.
+     */
+    public static long stream(Reader json, Listener listener) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        long timestamp = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "events":
+                    readChanges(reader, listener, true);
+                    break;
+                case "categories":
+                    readChanges(reader, listener, false);
+                    break;
+                case "timestamp":
+                    timestamp = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return timestamp;
+    }
+
+    /**
+     * Reads an object with "changed" and "deleted" arrays.
+     *
+     * @param forEvents True if the arrays hold events, false if they hold categories.
+     */
+    private static void readChanges(JsonReader reader, Listener listener, boolean forEvents) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "changed":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (forEvents)
+                            listener.changedEvent(Event.fromJSON(reader));
+                        else
+                            listener.changedCategory(Category.fromJSON(reader));
+                    }
+                    reader.endArray();
+                    break;
+                case "deleted":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (forEvents)
+                            listener.deletedEvent(reader.nextString());
+                        else
+                            listener.deletedCategory(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Receives changes as they are decoded by {@link #stream(Reader, Listener)}.
+     */
+    public interface Listener {
+        void changedEvent(Event event);
+        void deletedEvent(String pk);
+        void changedCategory(Category category);
+        void deletedCategory(String pk);
+    }
+
     @Value
     public static class EventUpdate {
         private final List<Event> changed;
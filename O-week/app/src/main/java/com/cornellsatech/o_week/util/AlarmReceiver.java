@@ -5,36 +5,32 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
-import com.cornellsatech.o_week.UserData;
-import com.cornellsatech.o_week.models.Event;
-
 /**
- * Receives messages sent from {@link android.app.AlarmManager}.
- * @see Notifications#scheduleForEvent(Event, int, Context)
+ * Receives messages sent from {@link android.app.AlarmManager}. Runs in its own process, where events are
+ * never loaded; everything a reminder shows is read from {@link ReminderManifest}.
+ * @see Notifications
  */
 public class AlarmReceiver extends BroadcastReceiver
 {
 	private static final String TAG = AlarmReceiver.class.getSimpleName();
-	public static final String EVENT_PK_KEY = "eventPk";
+	public static final String FIRE_AT_KEY = "fireAt";
 
 	/**
-	 * Send a notification for the event whose pk we received.
+	 * Send notifications for every reminder that's due, then set the alarm for the next one.
 	 * @param context
-	 * @param intent Contains event's pk.
+	 * @param intent Contains when the reminder the alarm was set for was due. Only used to ignore alarms
+	 *               set by older versions, since reminders that weren't posted may be due earlier.
 	 */
 	@Override
 	public void onReceive(Context context, Intent intent)
 	{
-		String eventPk = intent.getStringExtra(EVENT_PK_KEY);
-		if (eventPk == null)
+		long fireAt = intent.getLongExtra(FIRE_AT_KEY, -1);
+		if (fireAt == -1)
 		{
-			Log.e(TAG, "onReceive: No pk received");
+			//alarm set by an older version, which the queue replaces
+			Log.e(TAG, "onReceive: No reminder time received");
 			return;
 		}
-
-		//if the notification was created, then the event was deleted in an update, don't produce a notification
-		Event event = UserData.eventForPk(eventPk);
-		if (event != null)
-			Notifications.createForEvent(event, context);
+		Notifications.postDue(context);
 	}
 }
@@ -0,0 +1,761 @@
+package com.cornellsatech.o_week.util;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cornellsatech.o_week.models.Event;
+
+import org.joda.time.LocalDate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Saves and reads all events as a single compact binary file, instead of one JSON string per event.
+ * The whole file is read in one pass, and strings shared between events (category pks, locations)
+ * are only stored once.
+ *
+ * File layout (all integers big-endian):
+ * <pre>
+ *     int      {@link #MAGIC}
+ *     int      {@link #VERSION}
+ *     int      number of strings, then for each: int byte length, UTF-8 bytes
+ *     int      number of dates, then for each: int yyyymmdd, int first record offset, int record count
+ *     int      number of records, then for each: int byte length, record (see {@link #writeRecord})
+ * </pre>
+ * Records are sorted chronologically, so all records for a date are next to each other and can be
+ * read without decoding the rest of the file. Record offsets are relative to the first record.
+ *
+ * Updates from the database are appended to a separate journal instead of rewriting the snapshot,
+ * so only changed records are saved. The journal is merged into the snapshot the next time all events
+ * are read. Journal layout:
+ * <pre>
+ *     int      {@link #JOURNAL_MAGIC}
+ *     int      {@link #VERSION}
+ *     entries, each: byte {@link #ENTRY_CHANGED} or {@link #ENTRY_DELETED}, int byte length, then
+ *              for changed: a string table and a record, for deleted: the UTF-8 bytes of the pk
+ * </pre>
+ */
+public final class EventSnapshot
+{
+	private static final String FILE_NAME = "events.bin";
+	private static final String JOURNAL_FILE_NAME = "events.journal";
+	private static final int MAGIC = 0x4F57454B;   //"OWEK"
+	private static final int JOURNAL_MAGIC = 0x4F57454A;   //"OWEJ"
+	private static final byte ENTRY_CHANGED = 1;
+	private static final byte ENTRY_DELETED = 2;
+	private static final int VERSION = 1;
+	private static final int NULL_STRING = -1;
+	private static final int FLAG_FIRST_YEAR_REQUIRED = 1;
+	private static final int FLAG_TRANSFER_REQUIRED = 1 << 1;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String TAG = EventSnapshot.class.getSimpleName();
+
+	//suppress default constructor
+	private EventSnapshot(){}
+
+	/**
+	 * Returns whether a snapshot or journal has been saved.
+	 */
+	public static boolean exists(Context context)
+	{
+		return file(context).getBaseFile().exists() || journalFile(context).exists();
+	}
+
+	/**
+	 * Deletes the saved snapshot and journal, if any.
+	 */
+	public static void delete(Context context)
+	{
+		file(context).delete();
+		journalFile(context).delete();
+	}
+
+	/**
+	 * Replaces the snapshot with the given events and clears the journal. The file is swapped atomically,
+	 * so a crash while writing leaves the previous snapshot intact.
+	 *
+	 * @param events All events to save.
+	 */
+	public static void write(Context context, Iterable<Event> events)
+	{
+		List<Event> sortedEvents = new ArrayList<>();
+		for (Event event : events)
+			sortedEvents.add(event);
+		Collections.sort(sortedEvents);
+
+		AtomicFile file = file(context);
+		FileOutputStream fileStream = null;
+		try
+		{
+			byte[] bytes = encode(sortedEvents);
+			fileStream = file.startWrite();
+			fileStream.write(bytes);
+			file.finishWrite(fileStream);
+			journalFile(context).delete();
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not save events to snapshot.", e);
+			if (fileStream != null)
+				file.failWrite(fileStream);
+		}
+	}
+
+	/**
+	 * Appends changes to the journal. Only the given records are written; the snapshot is untouched.
+	 * If writing fails, the journal is truncated back to where it was, so a partly written entry never
+	 * precedes later ones. If even that fails, the journal is discarded along with the snapshot, since
+	 * the snapshot alone is missing changes that were saved before.
+	 *
+	 * @param changed Events that were added or changed.
+	 * @param deletedPks {@link Event#getPk()} of events that were deleted.
+	 * @return True if the changes were saved.
+	 */
+	public static boolean append(Context context, Collection<Event> changed, Collection<String> deletedPks)
+	{
+		if (changed.isEmpty() && deletedPks.isEmpty())
+			return true;
+
+		File journal = journalFile(context);
+		long previousLength = journal.length();
+		FileOutputStream out = null;
+		try
+		{
+			ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream();
+			DataOutputStream entries = new DataOutputStream(entriesBytes);
+			if (previousLength == 0)
+			{
+				entries.writeInt(JOURNAL_MAGIC);
+				entries.writeInt(VERSION);
+			}
+
+			ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+			for (Event event : changed)
+			{
+				entryBytes.reset();
+				encodeStandalone(new DataOutputStream(entryBytes), event);
+				entries.writeByte(ENTRY_CHANGED);
+				entries.writeInt(entryBytes.size());
+				entryBytes.writeTo(entries);
+			}
+			for (String pk : deletedPks)
+			{
+				byte[] pkBytes = pk.getBytes(UTF_8);
+				entries.writeByte(ENTRY_DELETED);
+				entries.writeInt(pkBytes.length);
+				entries.write(pkBytes);
+			}
+			entries.flush();
+
+			out = new FileOutputStream(journal, true);
+			entriesBytes.writeTo(out);
+			out.getFD().sync();
+			out.close();
+			Log.i(TAG, "Saved " + changed.size() + " changed and " + deletedPks.size() + " deleted events to journal");
+			return true;
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not save changes to journal.", e);
+			closeQuietly(out);
+			truncateJournal(context, previousLength);
+			return false;
+		}
+	}
+
+	/**
+	 * Cuts the journal back to the given length, removing entries that were partly written.
+	 * Deletes the snapshot and journal if that fails.
+	 */
+	private static void truncateJournal(Context context, long length)
+	{
+		File journal = journalFile(context);
+		if (length == 0)
+		{
+			if (!journal.exists() || journal.delete())
+				return;
+		}
+		else
+		{
+			RandomAccessFile file = null;
+			try
+			{
+				file = new RandomAccessFile(journal, "rw");
+				file.setLength(length);
+				return;
+			}
+			catch (IOException e)
+			{
+				Log.e(TAG, "Could not truncate journal.", e);
+			}
+			finally
+			{
+				closeQuietly(file);
+			}
+		}
+		Log.e(TAG, "Discarding snapshot and journal, events will be downloaded again.");
+		delete(context);
+	}
+
+	/**
+	 * Returns all events in the snapshot, with changes in the journal applied. If the journal had any
+	 * changes, they are merged into a new snapshot.
+	 *
+	 * @return Saved events. Empty if there is no snapshot or it could not be read.
+	 */
+	public static List<Event> read(Context context)
+	{
+		List<Event> events = readSnapshot(context);
+		if (!journalFile(context).exists())
+			return events;
+
+		Map<String, Event> eventForPk = new LinkedHashMap<>(events.size());
+		for (Event event : events)
+			eventForPk.put(event.getPk(), event);
+		int numEntries = replayJournal(context, eventForPk);
+		events = new ArrayList<>(eventForPk.values());
+		Log.i(TAG, "Merging " + numEntries + " journal entries into snapshot");
+		write(context, events);
+		return events;
+	}
+
+	/**
+	 * Returns all events in the snapshot, ignoring the journal.
+	 *
+	 * @return Saved events, sorted chronologically. Empty if there is no snapshot or it could not be read.
+	 */
+	private static List<Event> readSnapshot(Context context)
+	{
+		ByteBuffer buffer = readBuffer(context);
+		if (buffer == null)
+			return new ArrayList<>();
+		try
+		{
+			StringTable strings = new StringTable(buffer);
+			skipDates(buffer);
+			int numRecords = buffer.getInt();
+			List<Event> events = new ArrayList<>(numRecords);
+			for (int i = 0; i < numRecords; i++)
+			{
+				buffer.getInt();    //record length, only needed when skipping
+				events.add(readRecord(buffer, strings));
+			}
+			return events;
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException e)
+		{
+			Log.e(TAG, "Snapshot is corrupt, ignoring it.", e);
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Reads every date in the snapshot, plus the events of a single date. Strings are only decoded if
+	 * that date's events use them, so this is much cheaper than {@link #read(Context)}.
+	 *
+	 * The journal is not read, so no preview is available until it has been merged into the snapshot.
+	 *
+	 * @param preferredDate The date to read events for. If it has no events, the first date is used instead.
+	 * @return Preview, or null if there is no snapshot, it could not be read, or the journal has changes.
+	 */
+	@Nullable
+	public static Preview readPreview(Context context, LocalDate preferredDate)
+	{
+		if (journalFile(context).exists())
+			return null;
+		ByteBuffer buffer = readBuffer(context);
+		if (buffer == null)
+			return null;
+		try
+		{
+			StringTable strings = new StringTable(buffer);
+			int numDates = buffer.getInt();
+			if (numDates == 0)
+				return null;
+			List<LocalDate> dates = new ArrayList<>(numDates);
+			int[] offsets = new int[numDates];
+			int[] counts = new int[numDates];
+			int previewIndex = 0;
+			for (int i = 0; i < numDates; i++)
+			{
+				LocalDate date = readDate(buffer.getInt());
+				dates.add(date);
+				offsets[i] = buffer.getInt();
+				counts[i] = buffer.getInt();
+				if (date.equals(preferredDate))
+					previewIndex = i;
+			}
+
+			buffer.getInt();    //number of records
+			buffer.position(buffer.position() + offsets[previewIndex]);
+			List<Event> events = new ArrayList<>(counts[previewIndex]);
+			for (int i = 0; i < counts[previewIndex]; i++)
+			{
+				buffer.getInt();    //record length
+				events.add(readRecord(buffer, strings));
+			}
+			return new Preview(dates, dates.get(previewIndex), events);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+		{
+			Log.e(TAG, "Snapshot is corrupt, ignoring it.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a single event, with changes in the journal applied. The whole snapshot is read, since the
+	 * pk's index in the string table is needed to find its record, but only the pk of each record is
+	 * compared; no other snapshot record is decoded.
+	 *
+	 * Unlike every other method, this may be called while events are being loaded or saved on another
+	 * thread, since it never modifies either file. If the snapshot is being rewritten at the same time,
+	 * it is treated as corrupt and the event may not be found.
+	 *
+	 * @param pk {@link Event#getPk()}
+	 * @return Event, or null if it isn't saved, was deleted, or the snapshot could not be read.
+	 */
+	@Nullable
+	public static Event readEvent(Context context, String pk)
+	{
+		Event event = null;
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(readFully(file(context).getBaseFile()));
+			if (buffer.remaining() >= 8 && buffer.getInt() == MAGIC && buffer.getInt() == VERSION)
+				event = findRecord(buffer, pk.getBytes(UTF_8));
+		}
+		catch (FileNotFoundException ignored) {}
+		catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+		{
+			Log.e(TAG, "Could not read event " + pk + " from snapshot.", e);
+		}
+
+		if (!journalFile(context).exists())
+			return event;
+		Map<String, Event> eventForPk = new HashMap<>();
+		if (event != null)
+			eventForPk.put(pk, event);
+		replayJournal(context, eventForPk);
+		return eventForPk.get(pk);
+	}
+
+	/**
+	 * Finds the record with the given pk by comparing the index of its pk in the string table, which is
+	 * the first field of every record.
+	 *
+	 * @param buffer Buffer positioned after the header.
+	 * @param pkBytes UTF-8 bytes of {@link Event#getPk()}
+	 * @return Event, or null if no record has the pk.
+	 */
+	@Nullable
+	private static Event findRecord(ByteBuffer buffer, byte[] pkBytes)
+	{
+		StringTable strings = new StringTable(buffer);
+		int pkIndex = strings.indexOf(pkBytes);
+		if (pkIndex == NULL_STRING)
+			return null;
+		skipDates(buffer);
+		int numRecords = buffer.getInt();
+		for (int i = 0; i < numRecords; i++)
+		{
+			int length = buffer.getInt();
+			if (buffer.getInt(buffer.position()) == pkIndex)
+				return readRecord(buffer, strings);
+			buffer.position(buffer.position() + length);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the whole file into memory with a single read.
+	 *
+	 * @return Buffer positioned after the header, or null if there's no usable snapshot.
+	 */
+	@Nullable
+	private static ByteBuffer readBuffer(Context context)
+	{
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(file(context).readFully());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+			{
+				Log.e(TAG, "Snapshot has an unknown format, ignoring it.");
+				return null;
+			}
+			int version = buffer.getInt();
+			if (version != VERSION)
+			{
+				Log.e(TAG, "Snapshot has unsupported version " + version + ", ignoring it.");
+				return null;
+			}
+			return buffer;
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not read event snapshot.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Applies every entry in the journal. Stops at the first incomplete entry, which can be left behind
+	 * if the app is killed while appending.
+	 *
+	 * @param eventForPk Events to apply changes to, keyed by {@link Event#getPk()}.
+	 * @return Number of entries applied.
+	 */
+	private static int replayJournal(Context context, Map<String, Event> eventForPk)
+	{
+		ByteBuffer buffer;
+		try
+		{
+			buffer = ByteBuffer.wrap(readFully(journalFile(context)));
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not read journal.", e);
+			return 0;
+		}
+		if (buffer.remaining() < 8 || buffer.getInt() != JOURNAL_MAGIC || buffer.getInt() != VERSION)
+		{
+			Log.e(TAG, "Journal has an unknown format, ignoring it.");
+			return 0;
+		}
+
+		int numEntries = 0;
+		try
+		{
+			while (buffer.remaining() >= 5)
+			{
+				byte type = buffer.get();
+				int length = buffer.getInt();
+				if (buffer.remaining() < length)
+					break;
+				int end = buffer.position() + length;
+				if (type == ENTRY_CHANGED)
+				{
+					Event event = readRecord(buffer, new StringTable(buffer));
+					eventForPk.put(event.getPk(), event);
+				}
+				else if (type == ENTRY_DELETED)
+					eventForPk.remove(new String(buffer.array(), buffer.position(), length, UTF_8));
+				buffer.position(end);
+				numEntries++;
+			}
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException e)
+		{
+			Log.e(TAG, "Journal is corrupt, ignoring the rest of it.", e);
+		}
+		return numEntries;
+	}
+
+	/**
+	 * Encodes a single event along with its own string table.
+	 */
+	private static void encodeStandalone(DataOutputStream out, Event event) throws IOException
+	{
+		Map<String, Integer> stringIndices = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		writeRecord(new DataOutputStream(recordBytes), event, stringIndices, strings);
+
+		out.writeInt(strings.size());
+		for (String string : strings)
+		{
+			byte[] bytes = string.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		recordBytes.writeTo(out);
+		out.flush();
+	}
+
+	private static byte[] encode(List<Event> sortedEvents) throws IOException
+	{
+		//intern every string, and encode records in the same pass
+		Map<String, Integer> stringIndices = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(recordBytes);
+		ByteArrayOutputStream dateBytes = new ByteArrayOutputStream();
+		DataOutputStream dates = new DataOutputStream(dateBytes);
+		ByteArrayOutputStream singleRecordBytes = new ByteArrayOutputStream();
+		DataOutputStream singleRecord = new DataOutputStream(singleRecordBytes);
+
+		int numDates = 0;
+		LocalDate currentDate = null;
+		int dateOffset = 0;
+		int dateCount = 0;
+		for (Event event : sortedEvents)
+		{
+			if (!event.getStartDate().equals(currentDate))
+			{
+				if (currentDate != null)
+				{
+					writeDate(dates, currentDate, dateOffset, dateCount);
+					numDates++;
+				}
+				currentDate = event.getStartDate();
+				dateOffset = records.size();
+				dateCount = 0;
+			}
+			dateCount++;
+
+			singleRecordBytes.reset();
+			writeRecord(singleRecord, event, stringIndices, strings);
+			records.writeInt(singleRecordBytes.size());
+			singleRecordBytes.writeTo(records);
+		}
+		if (currentDate != null)
+		{
+			writeDate(dates, currentDate, dateOffset, dateCount);
+			numDates++;
+		}
+
+		ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(recordBytes.size() + dateBytes.size() + 1024);
+		DataOutputStream file = new DataOutputStream(fileBytes);
+		file.writeInt(MAGIC);
+		file.writeInt(VERSION);
+		file.writeInt(strings.size());
+		for (String string : strings)
+		{
+			byte[] bytes = string.getBytes(UTF_8);
+			file.writeInt(bytes.length);
+			file.write(bytes);
+		}
+		file.writeInt(numDates);
+		dateBytes.writeTo(file);
+		file.writeInt(sortedEvents.size());
+		recordBytes.writeTo(file);
+		file.flush();
+		return fileBytes.toByteArray();
+	}
+
+	/**
+	 * Writes every field of the event that isn't derived from other fields.
+	 * Strings are written as indices into the string table.
+	 */
+	private static void writeRecord(DataOutputStream out, Event event, Map<String, Integer> stringIndices, List<String> strings) throws IOException
+	{
+		out.writeInt(intern(event.getPk(), stringIndices, strings));
+		out.writeInt(intern(event.getName(), stringIndices, strings));
+		out.writeInt(intern(event.getDescription(), stringIndices, strings));
+		out.writeInt(intern(event.getUrl(), stringIndices, strings));
+		out.writeInt(intern(event.getImg(), stringIndices, strings));
+		out.writeInt(intern(event.getAdditional(), stringIndices, strings));
+		out.writeInt(intern(event.getLocation(), stringIndices, strings));
+		out.writeDouble(event.getLongitude());
+		out.writeDouble(event.getLatitude());
+		out.writeLong(event.getStart());
+		out.writeLong(event.getEnd());
+		List<String> categories = event.getCategories() == null ? Collections.<String>emptyList() : event.getCategories();
+		out.writeInt(categories.size());
+		for (String category : categories)
+			out.writeInt(intern(category, stringIndices, strings));
+		int flags = 0;
+		if (event.isFirstYearRequired())
+			flags |= FLAG_FIRST_YEAR_REQUIRED;
+		if (event.isTransferRequired())
+			flags |= FLAG_TRANSFER_REQUIRED;
+		out.writeByte(flags);
+	}
+
+	private static Event readRecord(ByteBuffer buffer, StringTable strings)
+	{
+		String pk = string(buffer, strings);
+		String name = string(buffer, strings);
+		String description = string(buffer, strings);
+		String url = string(buffer, strings);
+		String img = string(buffer, strings);
+		String additional = string(buffer, strings);
+		String location = string(buffer, strings);
+		double longitude = buffer.getDouble();
+		double latitude = buffer.getDouble();
+		long start = buffer.getLong();
+		long end = buffer.getLong();
+		int numCategories = buffer.getInt();
+		List<String> categories = new ArrayList<>(numCategories);
+		for (int i = 0; i < numCategories; i++)
+			categories.add(string(buffer, strings));
+		int flags = buffer.get();
+		return new Event(pk, name, description, url, img, additional, location, longitude, latitude,
+				start, end, categories, (flags & FLAG_FIRST_YEAR_REQUIRED) != 0,
+				(flags & FLAG_TRANSFER_REQUIRED) != 0);
+	}
+
+	private static void writeDate(DataOutputStream out, LocalDate date, int offset, int count) throws IOException
+	{
+		out.writeInt(date.getYear() * 10000 + date.getMonthOfYear() * 100 + date.getDayOfMonth());
+		out.writeInt(offset);
+		out.writeInt(count);
+	}
+
+	private static LocalDate readDate(int yyyymmdd)
+	{
+		return new LocalDate(yyyymmdd / 10000, yyyymmdd / 100 % 100, yyyymmdd % 100);
+	}
+
+	private static void skipDates(ByteBuffer buffer)
+	{
+		int numDates = buffer.getInt();
+		buffer.position(buffer.position() + numDates * 12);
+	}
+
+	private static int intern(@Nullable String string, Map<String, Integer> stringIndices, List<String> strings)
+	{
+		if (string == null)
+			return NULL_STRING;
+		Integer index = stringIndices.get(string);
+		if (index == null)
+		{
+			index = strings.size();
+			strings.add(string);
+			stringIndices.put(string, index);
+		}
+		return index;
+	}
+
+	@Nullable
+	private static String string(ByteBuffer buffer, StringTable strings)
+	{
+		int index = buffer.getInt();
+		return index == NULL_STRING ? null : strings.get(index);
+	}
+
+	private static AtomicFile file(Context context)
+	{
+		return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+	}
+
+	private static File journalFile(Context context)
+	{
+		return new File(context.getFilesDir(), JOURNAL_FILE_NAME);
+	}
+
+	private static byte[] readFully(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			byte[] bytes = new byte[(int) file.length()];
+			in.readFully(bytes);
+			return bytes;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void closeQuietly(@Nullable Closeable closeable)
+	{
+		if (closeable == null)
+			return;
+		try
+		{
+			closeable.close();
+		}
+		catch (IOException ignored) {}
+	}
+
+	/**
+	 * The dates in a snapshot, and the events on one of them.
+	 * @see #readPreview(Context, LocalDate)
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static class Preview
+	{
+		private final List<LocalDate> dates;
+		private final LocalDate date;
+		private final List<Event> events;
+	}
+
+	/**
+	 * The string table of a snapshot. Strings are decoded the first time they're requested, so
+	 * strings that are never read cost nothing.
+	 */
+	private static class StringTable
+	{
+		private final byte[] bytes;
+		private final int[] offsets;
+		private final int[] lengths;
+		private final String[] strings;
+
+		/**
+		 * Records the position of every string, leaving the buffer positioned after the table.
+		 * @param buffer Buffer positioned at the start of the string table.
+		 */
+		StringTable(ByteBuffer buffer)
+		{
+			bytes = buffer.array();
+			int numStrings = buffer.getInt();
+			offsets = new int[numStrings];
+			lengths = new int[numStrings];
+			strings = new String[numStrings];
+			for (int i = 0; i < numStrings; i++)
+			{
+				lengths[i] = buffer.getInt();
+				offsets[i] = buffer.position();
+				buffer.position(offsets[i] + lengths[i]);
+			}
+		}
+
+		String get(int index)
+		{
+			if (strings[index] == null)
+				strings[index] = new String(bytes, offsets[index], lengths[index], UTF_8);
+			return strings[index];
+		}
+
+		/**
+		 * Returns the index of the string with the given UTF-8 bytes, without decoding any strings.
+		 * @return Index, or {@link #NULL_STRING} if the string isn't in the table.
+		 */
+		int indexOf(byte[] utf8)
+		{
+			search:
+			for (int i = 0; i < offsets.length; i++)
+			{
+				if (lengths[i] != utf8.length)
+					continue;
+				for (int j = 0; j < utf8.length; j++)
+					if (bytes[offsets[i] + j] != utf8[j])
+						continue search;
+				return i;
+			}
+			return NULL_STRING;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package com.cornellsatech.o_week.util;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import lombok.Value;
+
+/**
+ * Saves responses downloaded by {@link Internet} to disk, along with their ETag and Last-Modified
+ * headers. Requests for a saved URL are made conditional, and if the server answers 304 (Not Modified),
+ * the saved body is used instead.
+ *
+ * Each URL is saved as 2 files named after a hash of the URL: the decompressed body, and a metadata
+ * file with the ETag and Last-Modified values on separate lines (empty if the header was missing).
+ * Once the cache grows past {@link #MAX_SIZE}, the least recently saved or used files are deleted.
+ *
+ * {@link #IN_USE_MILLIS}: How long after a file is saved or used it's kept, however full the cache is,
+ *                         since a request may still be about to read it.
+ */
+final class HttpCache
+{
+	private static final long MAX_SIZE = 4 * 1024 * 1024;
+	private static final long IN_USE_MILLIS = 60 * 1000;
+	private static final String BODY_SUFFIX = ".body";
+	private static final String METADATA_SUFFIX = ".meta";
+	static final String TEMP_SUFFIX = ".tmp";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String TAG = HttpCache.class.getSimpleName();
+	private final File directory;
+
+	HttpCache(File directory)
+	{
+		this.directory = directory;
+		if (!directory.exists() && !directory.mkdirs())
+			Log.e(TAG, "Could not create cache directory");
+	}
+
+	/**
+	 * Returns the saved response for the URL.
+	 * @return Saved response, or null if the URL was never saved.
+	 */
+	@Nullable
+	synchronized Entry get(String url)
+	{
+		String key = key(url);
+		File body = new File(directory, key + BODY_SUFFIX);
+		File metadata = new File(directory, key + METADATA_SUFFIX);
+		if (!body.exists() || !metadata.exists())
+			return null;
+		//mark as used, so a trim doesn't delete them before the body is read
+		long now = System.currentTimeMillis();
+		body.setLastModified(now);
+		metadata.setLastModified(now);
+
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(metadata), UTF_8));
+			try
+			{
+				String etag = emptyToNull(reader.readLine());
+				String lastModified = emptyToNull(reader.readLine());
+				return new Entry(body, etag, lastModified);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not read cached metadata for " + url, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether the response has headers that allow a later request to be conditional.
+	 */
+	static boolean isCacheable(HttpURLConnection connection)
+	{
+		return connection.getHeaderField("ETag") != null || connection.getHeaderField("Last-Modified") != null;
+	}
+
+	/**
+	 * Starts saving the response body. The returned stream is read in place of the body, and copies
+	 * everything read into a temporary file of its own, so the response can be parsed while it downloads
+	 * and the cache's lock is only held once it's saved. The previous response for the URL, if any, is
+	 * replaced only once the new one is completely written.
+	 *
+	 * @param url URL that was requested.
+	 * @param connection Connection the body is read from, for its headers.
+	 * @param body Decompressed response body. Closed when the returned stream is.
+	 * @throws IOException If the temporary file could not be created.
+	 */
+	Download download(String url, HttpURLConnection connection, InputStream body) throws IOException
+	{
+		//unique name, in case the same URL is downloaded twice at once
+		File tempBody = File.createTempFile(key(url) + BODY_SUFFIX, TEMP_SUFFIX, directory);
+		return new Download(url, connection, body, tempBody);
+	}
+
+	/**
+	 * Replaces the saved response for the URL with the temporary files, then trims the cache.
+	 */
+	private synchronized void save(String url, File tempBody, File tempMetadata) throws IOException
+	{
+		String key = key(url);
+		File bodyFile = new File(directory, key + BODY_SUFFIX);
+		File metadataFile = new File(directory, key + METADATA_SUFFIX);
+		//metadata is renamed last, so a body is never paired with another response's validators
+		metadataFile.delete();
+		if (!tempBody.renameTo(bodyFile) || !tempMetadata.renameTo(metadataFile))
+			throw new IOException("Could not save cached response for " + url);
+		trim(directory, MAX_SIZE);
+	}
+
+	private static void writeMetadata(File file, HttpURLConnection connection) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+		try
+		{
+			writer.write(nullToEmpty(connection.getHeaderField("ETag")) + "\n");
+			writer.write(nullToEmpty(connection.getHeaderField("Last-Modified")) + "\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Deletes the oldest files until the directory fits in the given size. Files still being written,
+	 * and files saved or used in the last {@link #IN_USE_MILLIS}, are skipped, since another request
+	 * may be writing or about to read them.
+	 * Also used by {@link ImageCache}.
+	 */
+	static void trim(File directory, long maxSize)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		long size = 0;
+		for (File file : files)
+			size += file.length();
+		if (size <= maxSize)
+			return;
+
+		Arrays.sort(files, new Comparator<File>()
+		{
+			@Override
+			public int compare(File file1, File file2)
+			{
+				return Long.compare(file1.lastModified(), file2.lastModified());
+			}
+		});
+		long inUseAfter = System.currentTimeMillis() - IN_USE_MILLIS;
+		for (File file : files)
+		{
+			if (size <= maxSize || file.lastModified() > inUseAfter)
+				break;
+			if (file.getName().endsWith(TEMP_SUFFIX))
+				continue;
+			size -= file.length();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Returns a file name unique to the URL.
+	 */
+	static String key(String url)
+	{
+		return Hashing.sha256().hashString(url, UTF_8).toString();
+	}
+
+	@Nullable
+	private static String emptyToNull(@Nullable String string)
+	{
+		return string == null || string.isEmpty() ? null : string;
+	}
+
+	private static String nullToEmpty(@Nullable String string)
+	{
+		return string == null ? "" : string;
+	}
+
+	/**
+	 * A saved response.
+	 *
+	 * {@link #body}: File containing the decompressed body.
+	 * {@link #etag}: ETag header of the response, if any.
+	 * {@link #lastModified}: Last-Modified header of the response, if any.
+	 */
+	@Value
+	static class Entry
+	{
+		private final File body;
+		@Nullable
+		private final String etag;
+		@Nullable
+		private final String lastModified;
+
+		/**
+		 * Makes the request conditional, so the server only sends a body if it changed since this was saved.
+		 */
+		void addConditionalHeaders(HttpURLConnection connection)
+		{
+			if (etag != null)
+				connection.setRequestProperty("If-None-Match", etag);
+			if (lastModified != null)
+				connection.setRequestProperty("If-Modified-Since", lastModified);
+		}
+	}
+
+	/**
+	 * A response body being read, which is copied to a temporary file as it's read.
+	 * Once {@link #save()} is called, the rest of the body is read and the file replaces the saved response.
+	 * If the stream is closed before that, the file is deleted.
+	 *
+	 * {@link #copy}: Temporary file the body is copied to.
+	 * {@link #saved}: True once the temporary file has replaced the saved response.
+	 */
+	final class Download extends FilterInputStream
+	{
+		private final String url;
+		private final HttpURLConnection connection;
+		private final File tempBody;
+		private final OutputStream copy;
+		private boolean saved = false;
+
+		private Download(String url, HttpURLConnection connection, InputStream body, File tempBody) throws IOException
+		{
+			super(body);
+			this.url = url;
+			this.connection = connection;
+			this.tempBody = tempBody;
+			copy = new BufferedOutputStream(new FileOutputStream(tempBody));
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b != -1)
+				copy.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int count = super.read(buffer, offset, length);
+			if (count > 0)
+				copy.write(buffer, offset, count);
+			return count;
+		}
+
+		/**
+		 * Reads the skipped bytes, so they're still saved.
+		 */
+		@Override
+		public long skip(long n) throws IOException
+		{
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			long skipped = 0;
+			while (skipped < n)
+			{
+				int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+				if (count == -1)
+					break;
+				skipped += count;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		/**
+		 * Reads the rest of the body, then saves it and its validators for the URL.
+		 * @throws IOException If the body could not be read or saved.
+		 */
+		void save() throws IOException
+		{
+			byte[] buffer = new byte[8192];
+			//noinspection StatementWithEmptyBody
+			while (read(buffer, 0, buffer.length) != -1);
+			copy.close();
+
+			File tempMetadata = File.createTempFile(key(url) + METADATA_SUFFIX, TEMP_SUFFIX, directory);
+			try
+			{
+				writeMetadata(tempMetadata, connection);
+				HttpCache.this.save(url, tempBody, tempMetadata);
+				saved = true;
+			}
+			finally
+			{
+				//only left behind if saving failed
+				tempMetadata.delete();
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				super.close();
+			}
+			finally
+			{
+				copy.close();
+				if (!saved)
+					tempBody.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package com.cornellsatech.o_week.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads images for {@link Internet}, keeping them in 2 tiers:
+ * 1. Memory: Decoded bitmaps, keyed by URL and target size. Sized by bitmap bytes.
+ * 2. Disk: Downloaded files, keyed by URL, so an image is only downloaded once.
+ * Images are decoded at the smallest power-of-2 sample size that still covers the target size, reusing
+ * the memory of bitmaps that are no longer needed when possible.
+ *
+ * {@link #memory}: Decoded bitmaps. Only modified on the main thread.
+ * {@link #directory}: Where downloaded files are saved.
+ * {@link #inFlight}: Loads in progress, so the same image is never loaded twice at once.
+ * {@link #waiting}: Callers of each load in progress. A load is cancelled once it has none left.
+ * {@link #useCounts}: How many views display each bitmap. A bitmap that is neither displayed nor in
+ *                     {@link #memory} is added to {@link #reusable}.
+ * {@link #reusable}: Bitmaps whose memory can be decoded into. Accessed from any thread.
+ */
+final class ImageCache
+{
+	private static final long MAX_DISK_SIZE = 20 * 1024 * 1024;
+	private static final String TAG = ImageCache.class.getSimpleName();
+	private final LruCache<String, Bitmap> memory;
+	private final File directory;
+	private final Map<String, Request<Bitmap>> inFlight = new HashMap<>();
+	private final Map<String, List<Handle>> waiting = new HashMap<>();
+	private final Map<Bitmap, Integer> useCounts = new IdentityHashMap<>();
+	private final List<SoftReference<Bitmap>> reusable = new ArrayList<>();
+
+	ImageCache(File directory)
+	{
+		this.directory = directory;
+		if (!directory.exists() && !directory.mkdirs())
+			Log.e(TAG, "Could not create image directory");
+
+		int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+		memory = new LruCache<String, Bitmap>(maxBytes)
+		{
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap)
+			{
+				return bitmap.getAllocationByteCount();
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue)
+			{
+				if (!useCounts.containsKey(oldValue))
+					addReusable(oldValue);
+			}
+		};
+	}
+
+	/**
+	 * Loads the image at the URL, decoded to cover the target size. If the image is in memory, the
+	 * callback is executed immediately.
+	 *
+	 * @param url Address of the image.
+	 * @param width Target width in pixels.
+	 * @param height Target height in pixels.
+	 * @param priority Position in {@link RequestEngine}'s image queue.
+	 * @param callback Executed on the main thread with the bitmap, or null if it could not be loaded.
+	 * @return This caller's share of the load in progress, which may be shared with others loading the
+	 *         same image. Null if the image was in memory, so the callback has already been executed.
+	 */
+	@MainThread
+	@Nullable
+	Handle load(String url, int width, int height, Request.Priority priority, Callback<Bitmap> callback)
+	{
+		final String key = url + "@" + width + "x" + height;
+		Bitmap bitmap = memory.get(key);
+		if (bitmap != null)
+		{
+			callback.execute(bitmap);
+			return null;
+		}
+
+		Handle handle = new Handle(key, callback);
+		List<Handle> handles = waiting.get(key);
+		if (handles != null)
+		{
+			handles.add(handle);
+			return handle;
+		}
+
+		handles = new ArrayList<>();
+		handles.add(handle);
+		waiting.put(key, handles);
+		inFlight.put(key, RequestEngine.image(new Load(url, width, height), priority, new Callback<Bitmap>()
+		{
+			@Override
+			public void execute(Bitmap bitmap)
+			{
+				inFlight.remove(key);
+				List<Handle> handles = waiting.remove(key);
+				if (bitmap != null)
+					memory.put(key, bitmap);
+				if (handles != null)
+					for (Handle handle : handles)
+						handle.deliver(bitmap);
+			}
+		}));
+		return handle;
+	}
+
+	/**
+	 * Displays the bitmap until the lifecycle is destroyed. Until then, the bitmap's memory is never reused.
+	 */
+	@MainThread
+	void display(final Bitmap bitmap, ImageView imageView, LifecycleOwner owner)
+	{
+		imageView.setImageBitmap(bitmap);
+		Integer count = useCounts.get(bitmap);
+		useCounts.put(bitmap, count == null ? 1 : count + 1);
+		owner.getLifecycle().addObserver(new LifecycleEventObserver()
+		{
+			@Override
+			public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event)
+			{
+				if (event != Lifecycle.Event.ON_DESTROY)
+					return;
+				source.getLifecycle().removeObserver(this);
+				release(bitmap);
+			}
+		});
+	}
+
+	private void release(Bitmap bitmap)
+	{
+		Integer count = useCounts.get(bitmap);
+		if (count == null)
+			return;
+		if (count > 1)
+		{
+			useCounts.put(bitmap, count - 1);
+			return;
+		}
+		useCounts.remove(bitmap);
+		if (!memory.snapshot().containsValue(bitmap))
+			addReusable(bitmap);
+	}
+
+	private void addReusable(Bitmap bitmap)
+	{
+		if (!bitmap.isMutable())
+			return;
+		synchronized (reusable)
+		{
+			reusable.add(new SoftReference<>(bitmap));
+		}
+	}
+
+	/**
+	 * Removes and returns a bitmap large enough to decode into with the given options.
+	 * @return Bitmap, or null if none are large enough.
+	 */
+	@Nullable
+	private Bitmap takeReusable(BitmapFactory.Options options)
+	{
+		int width = options.outWidth / options.inSampleSize;
+		int height = options.outHeight / options.inSampleSize;
+		int bytes = width * height * 4; //ARGB_8888
+		synchronized (reusable)
+		{
+			Iterator<SoftReference<Bitmap>> iterator = reusable.iterator();
+			while (iterator.hasNext())
+			{
+				Bitmap bitmap = iterator.next().get();
+				if (bitmap == null || bitmap.isRecycled())
+					iterator.remove();
+				else if (bitmap.getAllocationByteCount() >= bytes)
+				{
+					iterator.remove();
+					return bitmap;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Downloads the image at the URL to disk without decoding it, so that a later {@link #load} doesn't
+	 * wait on the network. Nothing is downloaded if the image is already on disk, or if it doesn't fit
+	 * in the budget.
+	 *
+	 * @param url Address of the image.
+	 * @param budget Bytes that may still be downloaded. Shared between prefetches, and reduced by the
+	 *               size of each image downloaded, as it downloads.
+	 * @return The prefetch, queued at {@link Request.Priority#LOW} so it never delays an image the user
+	 *         is waiting for. Its result is true if the image was downloaded.
+	 */
+	Request<Boolean> prefetch(final String url, final AtomicLong budget)
+	{
+		return RequestEngine.image(new Request.Work<Boolean>()
+		{
+			@Override
+			public Boolean run(Request<Boolean> request) throws IOException
+			{
+				File file = new File(directory, HttpCache.key(url));
+				if (file.exists() || budget.get() <= 0)
+					return false;
+				return download(request, url, file, budget);
+			}
+		}, Request.Priority.LOW, null);
+	}
+
+	/**
+	 * Downloads the file at the URL to disk. Bytes are reserved from the budget before they're downloaded,
+	 * so prefetches running in parallel never download more than it allows between them: the whole file
+	 * up front if its length is known, otherwise a buffer at a time. Bytes that weren't used, or belong to
+	 * a download that didn't finish, are given back.
+	 *
+	 * @param budget Bytes that may be downloaded, reduced by the size of the file. Null if unlimited.
+	 * @return True if the file was downloaded, false if it would have exceeded the budget.
+	 * @throws IOException If the file could not be downloaded or saved.
+	 */
+	@WorkerThread
+	private boolean download(Request<?> request, String url, File file, @Nullable AtomicLong budget) throws IOException
+	{
+		//unique, in case a prefetch and a load download the same image at once
+		File temp = File.createTempFile(file.getName(), HttpCache.TEMP_SUFFIX, directory);
+		long reserved = 0;
+		long size = 0;
+		boolean saved = false;
+		try
+		{
+			HttpURLConnection connection = request.openConnection(url);
+			try
+			{
+				int contentLength = connection.getContentLength();
+				if (budget != null && contentLength > 0)
+				{
+					if (!reserve(budget, contentLength))
+						return false;
+					reserved = contentLength;
+				}
+				InputStream in = connection.getInputStream();
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+				try
+				{
+					byte[] buffer = new byte[8192];
+					int count;
+					while ((count = in.read(buffer)) != -1)
+					{
+						size += count;
+						if (budget != null && size > reserved)
+						{
+							if (!reserve(budget, size - reserved))
+								return false;
+							reserved = size;
+						}
+						out.write(buffer, 0, count);
+					}
+				}
+				finally
+				{
+					out.close();
+					in.close();
+				}
+			}
+			finally
+			{
+				connection.disconnect();
+			}
+			if (!temp.renameTo(file))
+				throw new IOException("Could not save image from " + url);
+			saved = true;
+		}
+		finally
+		{
+			if (!saved)
+				temp.delete();
+			if (budget != null)
+				budget.addAndGet(saved ? reserved - size : reserved);
+		}
+		HttpCache.trim(directory, MAX_DISK_SIZE);
+		return true;
+	}
+
+	/**
+	 * Takes bytes from the budget, only if there are enough left.
+	 * @return True if the bytes were taken.
+	 */
+	private static boolean reserve(AtomicLong budget, long bytes)
+	{
+		while (true)
+		{
+			long available = budget.get();
+			if (available < bytes)
+				return false;
+			if (budget.compareAndSet(available, available - bytes))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the largest power of 2 that keeps the image at least as large as the target in both dimensions.
+	 */
+	private static int sampleSize(int imageWidth, int imageHeight, int width, int height)
+	{
+		int sampleSize = 1;
+		if (width <= 0 || height <= 0)
+			return sampleSize;
+		while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height)
+			sampleSize *= 2;
+		return sampleSize;
+	}
+
+	/**
+	 * One caller's interest in a load. Cancelling it only cancels the download if no one else is waiting
+	 * for the same image.
+	 *
+	 * {@link #lifecycle}: Lifecycle the handle is bound to, if any. See {@link #bindTo(LifecycleOwner)}.
+	 */
+	final class Handle implements LifecycleEventObserver
+	{
+		private final String key;
+		private final Callback<Bitmap> callback;
+		@Nullable
+		private Lifecycle lifecycle;
+
+		private Handle(String key, Callback<Bitmap> callback)
+		{
+			this.key = key;
+			this.callback = callback;
+		}
+
+		/**
+		 * Cancels this handle when the lifecycle is destroyed, so the callback never touches a dead view.
+		 *
+		 * @param owner Activity or fragment that started the load.
+		 */
+		@MainThread
+		void bindTo(LifecycleOwner owner)
+		{
+			if (lifecycle != null)
+				return;
+			lifecycle = owner.getLifecycle();
+			if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED)
+				cancel();
+			else
+				lifecycle.addObserver(this);
+		}
+
+		@Override
+		public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event)
+		{
+			if (event == Lifecycle.Event.ON_DESTROY)
+				cancel();
+		}
+
+		/**
+		 * Stops waiting for the image. The download is cancelled if no one else is waiting for it.
+		 * Does nothing if the image has already been delivered.
+		 */
+		@MainThread
+		void cancel()
+		{
+			unbind();
+			List<Handle> handles = waiting.get(key);
+			if (handles == null || !handles.remove(this) || !handles.isEmpty())
+				return;
+			//if the load already finished, its callback is on the way and will clean up instead
+			Request<Bitmap> request = inFlight.get(key);
+			if (request != null && request.cancel(true))
+			{
+				inFlight.remove(key);
+				waiting.remove(key);
+			}
+		}
+
+		private void deliver(@Nullable Bitmap bitmap)
+		{
+			unbind();
+			callback.execute(bitmap);
+		}
+
+		private void unbind()
+		{
+			if (lifecycle != null)
+				lifecycle.removeObserver(this);
+			lifecycle = null;
+		}
+	}
+
+	/**
+	 * Downloads the image if it isn't on disk, then decodes it.
+	 */
+	private class Load implements Request.Work<Bitmap>
+	{
+		private final String url;
+		private final int width;
+		private final int height;
+
+		private Load(String url, int width, int height)
+		{
+			this.url = url;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		@WorkerThread
+		public Bitmap run(Request<Bitmap> request) throws IOException
+		{
+			File file = new File(directory, HttpCache.key(url));
+			if (file.exists())
+				file.setLastModified(System.currentTimeMillis());
+			else
+				download(request, url, file, null);
+			return decode(file);
+		}
+
+		private Bitmap decode(File file) throws IOException
+		{
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeFile(file.getPath(), options);
+			if (options.outWidth <= 0 || options.outHeight <= 0)
+			{
+				file.delete();
+				throw new IOException("Could not decode image from " + url);
+			}
+
+			options.inJustDecodeBounds = false;
+			options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+			options.inMutable = true;
+			options.inBitmap = takeReusable(options);
+			Bitmap bitmap;
+			try
+			{
+				bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+			}
+			catch (IllegalArgumentException e)
+			{
+				//the reused bitmap didn't fit after all
+				options.inBitmap = null;
+				bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+			}
+			if (bitmap == null)
+				throw new IOException("Could not decode image from " + url);
+			return bitmap;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.cornellsatech.o_week.util;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+
+import com.cornellsatech.o_week.R;
+import com.cornellsatech.o_week.UserData;
+import com.cornellsatech.o_week.models.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads the images of the user's upcoming selected events ahead of time, so opening one in
+ * {@link com.cornellsatech.o_week.DetailsActivity} doesn't wait on the network. Images are prefetched
+ * once all events are loaded, and again whenever the selection changes.
+ *
+ * To avoid costing the user data, images are only prefetched on unmetered connections, and each round
+ * downloads at most {@link R.integer#image_prefetch_budget_kb}. Events starting soonest go first.
+ * Selection changes come in bursts, so a round only starts once the selection has stopped changing
+ * for {@link #DEBOUNCE_MILLIS}.
+ *
+ * {@link #pending}: Prefetches of the latest round, by image URL. When a new round starts, prefetches
+ *                   of images that are no longer wanted are cancelled, and the rest keep running.
+ * {@link #prefetchRound}: Starts a round. Posted with a delay, and replaced by each selection change.
+ */
+public final class ImagePrefetcher
+{
+	private static final long DEBOUNCE_MILLIS = 2000;
+	private static final String TAG = ImagePrefetcher.class.getSimpleName();
+	private final Context context;
+	private final ImageCache images;
+	private final Map<String, Request<Boolean>> pending = new HashMap<>();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable prefetchRound = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			prefetch();
+		}
+	};
+
+	private ImagePrefetcher(Context context, ImageCache images)
+	{
+		this.context = context.getApplicationContext();
+		this.images = images;
+	}
+
+	/**
+	 * Prefetches images into {@link Internet}'s image cache for as long as the app runs. Call once, after
+	 * {@link Internet#installCache(Context)}.
+	 */
+	@MainThread
+	public static void start(Context context)
+	{
+		ImageCache images = Internet.getImages();
+		if (images == null)
+		{
+			Log.e(TAG, "Image cache not installed, not prefetching");
+			return;
+		}
+		new ImagePrefetcher(context, images).subscribe();
+	}
+
+	/**
+	 * Prefetches whenever events are loaded or selected.
+	 */
+	private void subscribe()
+	{
+		NotificationCenter.DEFAULT.subscribe(NotificationCenter.EventDataReady.class, new Callback<NotificationCenter.EventDataReady>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventDataReady eventDataReady)
+			{
+				if (eventDataReady.complete)
+					prefetch();
+			}
+		});
+		NotificationCenter.DEFAULT.subscribe(NotificationCenter.EventSelectionChanged.class, new Callback<NotificationCenter.EventSelectionChanged>()
+		{
+			@Override
+			public void execute(NotificationCenter.EventSelectionChanged eventSelectionChanged)
+			{
+				handler.removeCallbacks(prefetchRound);
+				handler.postDelayed(prefetchRound, DEBOUNCE_MILLIS);
+			}
+		});
+	}
+
+	/**
+	 * Queues a prefetch for every selected event that hasn't ended, ordered by start time, and cancels
+	 * prefetches of the previous round for images that are no longer wanted. Prefetches still running
+	 * for wanted images are kept, and count against the previous round's budget.
+	 */
+	private void prefetch()
+	{
+		handler.removeCallbacks(prefetchRound);
+		Set<String> urls = new LinkedHashSet<>();
+		if (UserData.isLoaded() && isUnmetered())
+		{
+			long now = System.currentTimeMillis();
+			List<Event> upcoming = new ArrayList<>();
+			for (Event event : UserData.selectedEvents)
+				if (event.getEnd() >= now && event.getImg() != null && !event.getImg().isEmpty())
+					upcoming.add(event);
+			Collections.sort(upcoming);
+			for (Event event : upcoming)
+				urls.add(event.getImg());
+		}
+
+		Iterator<Map.Entry<String, Request<Boolean>>> entries = pending.entrySet().iterator();
+		while (entries.hasNext())
+		{
+			Map.Entry<String, Request<Boolean>> entry = entries.next();
+			if (entry.getValue().isDone())
+				entries.remove();
+			else if (!urls.contains(entry.getKey()))
+			{
+				entry.getValue().cancel(true);
+				entries.remove();
+			}
+		}
+
+		AtomicLong budget = new AtomicLong(context.getResources().getInteger(R.integer.image_prefetch_budget_kb) * 1024L);
+		int queued = 0;
+		for (String url : urls)
+		{
+			if (pending.containsKey(url))
+				continue;
+			pending.put(url, images.prefetch(url, budget));
+			queued++;
+		}
+		Log.i(TAG, "Prefetching " + queued + " new images, " + (pending.size() - queued) + " still running");
+	}
+
+	/**
+	 * Returns whether the active network reaches the internet without costing the user data.
+	 * {@link NetworkInfo} is only used before M, where the active network can't be queried directly.
+	 */
+	@SuppressWarnings("deprecation")
+	private boolean isUnmetered()
+	{
+		ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		if (manager == null || manager.isActiveNetworkMetered())
+			return false;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+		{
+			NetworkCapabilities capabilities = manager.getNetworkCapabilities(manager.getActiveNetwork());
+			return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+					&& capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+		}
+		NetworkInfo network = manager.getActiveNetworkInfo();
+		return network != null && network.isConnected();
+	}
+}
@@ -3,109 +3,206 @@ package com.cornellsatech.o_week.util;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.util.Log;
 import android.widget.ImageView;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
 
 import com.cornellsatech.o_week.R;
 import com.cornellsatech.o_week.UserData;
 import com.cornellsatech.o_week.models.Event;
 import com.cornellsatech.o_week.models.VersionUpdate;
 import com.google.android.material.snackbar.Snackbar;
-import com.google.common.io.CharStreams;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.stream.JsonReader;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import lombok.AllArgsConstructor;
 
 /**
- * Handles ALL web-related activities for this app.
+ * Handles ALL web-related activities for this app. Every download runs on {@link RequestEngine} and
+ * returns a {@link Request} that can be cancelled or bound to a lifecycle.
+ *
+ * {@link #cache}: Saves responses so requests can be conditional. Null until {@link #installCache(Context)}.
+ * {@link #images}: Saves downloaded and decoded images. Null until {@link #installCache(Context)}.
  */
 public final class Internet
 {
+	private static final String CACHE_DIRECTORY = "http";
+	private static final String IMAGE_DIRECTORY = "images";
+	//a full update is generated and streamed by the server for a while before it ends
+	private static final int VERSION_TIMEOUT_MILLIS = 60_000;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	private static final String TAG = Internet.class.getSimpleName();
+	@Nullable
+	private static volatile HttpCache cache;
+	@Nullable
+	private static ImageCache images;
 
 	//suppress default constructor
 	private Internet(){}
 
+	/**
+	 * Saves responses to the app's cache directory from now on, so later requests for the same URL
+	 * only download a body if it changed, and images are only downloaded once. Call once, before any requests.
+	 */
+	public static void installCache(Context context)
+	{
+		cache = new HttpCache(new File(context.getCacheDir(), CACHE_DIRECTORY));
+		images = new ImageCache(new File(context.getCacheDir(), IMAGE_DIRECTORY));
+	}
+
+	/**
+	 * Returns the image cache, for {@link ImagePrefetcher}.
+	 */
+	@Nullable
+	static ImageCache getImages()
+	{
+		return images;
+	}
+
+	/**
+	 * Replaces the cache used by {@link GET}, so tests can use a temporary directory.
+	 */
+	@VisibleForTesting
+	static void setCache(@Nullable HttpCache cache)
+	{
+		Internet.cache = cache;
+	}
+
 	/**
 	 * Downloads all events and categories to update the app to the database's newest version.
-	 * The {@link Callback} provided will be executed when the data has been processed. The parameter for {@link Callback#execute(Object)} will be the new version (int).
-	 * A toast is sent out with titles of changed events that the user had selected.
+	 * The response is decoded one record at a time with {@link VersionUpdate#stream}, and each record is
+	 * handed to the listener as soon as it's decoded, so neither the raw JSON nor the whole update is
+	 * ever held in memory.
 	 * @param timestamp Current version of database on file. Should be 0 if never downloaded from database.
-	 * @param onCompletion Function to execute when data is processed. String in parameter is new version.
+	 * @param listener Receives every change on the download thread.
+	 * @param onCompletion Function to execute once every change has been decoded. The parameter is the
+	 *                     new version, or null if the download failed.
 	 */
-	public static void getUpdatesForVersion(long timestamp, final Callback<VersionUpdate> onCompletion)
+	public static Request<Long> getUpdatesForVersion(long timestamp, final VersionUpdate.Listener listener,
+	                                                 Callback<Long> onCompletion)
 	{
         Log.i(TAG, "Updating with timestamp: " + timestamp);
-		new GET("https://us-east1-oweek-1496849141291.cloudfunctions.net/version?timestamp="
-				+ timestamp, new Callback<String>()
+		return RequestEngine.api(new GET<>("https://us-east1-oweek-1496849141291.cloudfunctions.net/version?timestamp="
+				+ timestamp, new ResponseParser<Long>()
 		{
 			@Override
-			public void execute(String msg)
+			public Long parse(Reader body) throws IOException
 			{
-				onCompletion.execute(msg.isEmpty() ? null : VersionUpdate.fromJSON(msg));
+				return VersionUpdate.stream(body, listener);
 			}
-		}).execute();
+		}), Request.Priority.HIGH, VERSION_TIMEOUT_MILLIS, onCompletion);
 	}
 
-	public static void getResources(final Context context) {
-		new GET("https://us-east1-oweek-1496849141291.cloudfunctions.net/getResources", new Callback<String>()
+	/**
+	 * Downloads the names and links of resources, saving them to {@link UserData#resourceNameLink}.
+	 */
+	public static Request<Map<String, String>> getResources(final Context context) {
+		return RequestEngine.api(new GET<>("https://us-east1-oweek-1496849141291.cloudfunctions.net/getResources", new ResponseParser<Map<String, String>>()
 		{
 			@Override
-			public void execute(String msg)
+			public Map<String, String> parse(Reader body) throws IOException
 			{
-				try
+				Map<String, String> resources = new HashMap<>();
+				JsonReader json = new JsonReader(body);
+				json.beginArray();
+				while (json.hasNext())
 				{
-					JSONArray json = new JSONArray(msg);
-					for (int i = 0; i < json.length(); i++)
+					String name = null;
+					String link = null;
+					json.beginObject();
+					while (json.hasNext())
 					{
-						JSONObject resource = json.getJSONObject(i);
-						String name = resource.getString("name");
-						String link = resource.getString("link");
-						UserData.resourceNameLink.put(name, link);
+						switch (json.nextName())
+						{
+							case "name":
+								name = json.nextString();
+								break;
+							case "link":
+								link = json.nextString();
+								break;
+							default:
+								json.skipValue();
+						}
 					}
-
-					Settings.setResources(UserData.resourceNameLink, context);
+					json.endObject();
+					if (name != null && link != null)
+						resources.put(name, link);
 				}
-				catch (JSONException e)
+				json.endArray();
+				return resources;
+			}
+		}), Request.Priority.LOW, new Callback<Map<String, String>>()
+		{
+			@Override
+			public void execute(Map<String, String> resources)
+			{
+				if (resources == null)
 				{
-					Log.e(TAG, "Could not parse resources: " + msg);
+					Log.e(TAG, "Could not parse resources");
+					return;
 				}
+				UserData.resourceNameLink.putAll(resources);
+				Settings.setResources(UserData.resourceNameLink, context);
 			}
-		}).execute();
+		});
 	}
 	/**
-	 * Try to download image from the internet to the given {@link ImageView}.
+	 * Try to download image from the internet to the given {@link ImageView}. The image is decoded to the
+	 * width of the screen at a 16:9 ratio, the size it is displayed at. If the image is in memory, it is
+	 * displayed immediately; otherwise the view is cleared until it loads.
 	 *
 	 * @param event Event to get image for
 	 * @param imageView View to display image
 	 * @param layout Layout to display {@link Snackbar} error
+	 * @param owner Lifecycle of the view. Once it's destroyed, the image is no longer waited for, and the
+	 *              download is cancelled unless another view is waiting for it.
 	 */
-	public static void getImageForEvent(final Event event, final ImageView imageView, final CoordinatorLayout layout)
+	public static void getImageForEvent(final Event event, final ImageView imageView, final CoordinatorLayout layout,
+	                                    final LifecycleOwner owner)
 	{
-		new GetImage(event.getImg(), new Callback<Bitmap>()
+		final ImageCache images = Internet.images;
+		if (images == null)
+			return;
+		int width = imageView.getResources().getDisplayMetrics().widthPixels;
+		int height = width * 9 / 16;
+		ImageCache.Handle handle = images.load(event.getImg(), width, height, Request.Priority.HIGH, new Callback<Bitmap>()
 		{
 			@Override
 			public void execute(Bitmap bitmap)
 			{
+				if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED)
+					return;
 				if (bitmap == null)
 					Snackbar.make(layout, R.string.snackbar_image_error, Snackbar.LENGTH_SHORT).show();
 				else
-					imageView.setImageBitmap(bitmap);
+					images.display(bitmap, imageView, owner);
 			}
-		}).execute();
+		});
+		//not in memory
+		if (handle != null)
+		{
+			imageView.setImageDrawable(null);
+			handle.bindTo(owner);
+		}
 	}
 	/**
 	 * Opens the user to the website given.
@@ -119,67 +216,85 @@ public final class Internet
 	}
 
 	/**
-	 * Retrieves data from {@link #urlString} and calls {@link #callback} with it.
-	 * Must be private static class to prevent memory leaks from inner classes.
-	 * Extends AsyncTask since going on internet may lag app & should be done in bg.
+	 * Turns the body of a response into an object. Runs on {@link RequestEngine}'s threads.
+	 * @param <T> Type of object the body describes.
+	 */
+	interface ResponseParser<T>
+	{
+		T parse(Reader body) throws IOException;
+	}
+
+	/**
+	 * Retrieves data from {@link #urlString} and parses it with {@link #parser}.
+	 * Must be static class to prevent memory leaks from inner classes.
 	 *
-	 * @see <a href="https://stackoverflow.com/questions/44309241/warning-this-asynctask-class-should-be-static-or-leaks-might-occur">StackOverFlow</a>
+	 * Responses are requested compressed, and the body is streamed to the parser instead of being read
+	 * into a String. If a {@link #cache} is installed, requests for saved URLs are conditional, and a
+	 * 304 (Not Modified) response is parsed from the saved body. A new body is copied to the cache as the
+	 * parser reads it, and only saved once it has been parsed.
 	 */
 	@AllArgsConstructor
-	private static class GET extends AsyncTask<Void, Void, String>
+	static class GET<T> implements Request.Work<T>
 	{
 		private final String urlString;
-		private final Callback<String> callback;
+		private final ResponseParser<T> parser;
 
 		@Override
 		@WorkerThread
-		protected String doInBackground(Void... params)
+		public T run(Request<T> request) throws IOException
 		{
+			HttpCache cache = Internet.cache;
+			HttpURLConnection connection = request.openConnection(urlString);
 			try
 			{
-				URL url = new URL(urlString);
-				HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-				String body = CharStreams.toString(new InputStreamReader(connection.getInputStream()));
-				connection.disconnect();
-				Log.i(TAG, "GET from database succeeded");
-				return body;
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-				Log.e(TAG, "GET from database failed :(");
-			}
-			return "";
-		}
+				connection.setRequestProperty("Accept-Encoding", "gzip");
+				HttpCache.Entry cached = cache == null ? null : cache.get(urlString);
+				if (cached != null)
+					cached.addConditionalHeaders(connection);
 
-		@Override
-		protected void onPostExecute(String body)
-		{
-			callback.execute(body);
-		}
-	}
-
-	@AllArgsConstructor
-	private static class GetImage extends AsyncTask<Void, Void, Bitmap>
-	{
-		private final String urlString;
-		private final Callback<Bitmap> callback;
+				int responseCode = connection.getResponseCode();
+				Reader body;
+				HttpCache.Download download = null;
+				if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+				{
+					Log.i(TAG, "GET from database not modified, using cache");
+					body = fileReader(cached.getBody());
+				}
+				else if (responseCode == HttpURLConnection.HTTP_OK)
+				{
+					InputStream stream = connection.getInputStream();
+					if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+						stream = new GZIPInputStream(stream);
+					//saved as it's parsed, so parsing doesn't wait for the download to end
+					if (cache != null && HttpCache.isCacheable(connection))
+						stream = download = cache.download(urlString, connection, stream);
+					body = new BufferedReader(new InputStreamReader(stream, UTF_8));
+					Log.i(TAG, "GET from database succeeded");
+				}
+				else
+					throw new IOException("GET from database failed with response code " + responseCode);
 
-		@Override
-		@WorkerThread
-		protected Bitmap doInBackground(Void... params) {
-			try {
-				return BitmapFactory.decodeStream(new URL(urlString).openStream());
-			} catch (Exception e) {
-				Log.d(TAG, "Get image from url " + urlString + " failed");
-				return null;
+				try
+				{
+					T result = parser.parse(body);
+					if (download != null)
+						download.save();
+					return result;
+				}
+				finally
+				{
+					body.close();
+				}
+			}
+			finally
+			{
+				connection.disconnect();
 			}
 		}
 
-		@Override
-		protected void onPostExecute(Bitmap body)
+		private static Reader fileReader(File file) throws IOException
 		{
-			callback.execute(body);
+			return new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
 		}
 	}
 }
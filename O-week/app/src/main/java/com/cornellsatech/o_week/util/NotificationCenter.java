@@ -1,54 +1,454 @@
 package com.cornellsatech.o_week.util;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
 import com.cornellsatech.o_week.DatePickerAdapter;
+import com.cornellsatech.o_week.EventDiff;
 import com.cornellsatech.o_week.FeedAdapter;
 import com.cornellsatech.o_week.UserData;
 import com.cornellsatech.o_week.models.Category;
+import com.cornellsatech.o_week.models.CategoryIds;
 import com.cornellsatech.o_week.models.Event;
-import com.google.common.eventbus.EventBus;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
 
 /**
  * Used for communication between objects that have no reference to each other.
  *
- * Any classes that wish to listen to events (not {@link Event}s) must register itself by calling
- * {@link EventBus#register(Object)}, and call {@link EventBus#unregister(Object)} on {@link #DEFAULT}
- * before it is garbage collected to avoid memory leaks. To listen to events, write methods as so:
+ * Listeners subscribe to one type of notification (not {@link Event}s) with a {@link Callback}:
  *
  * <code>
- *     \@Subscribe
- *     public void methodName(EventToListenTo e){}
+ *     NotificationCenter.DEFAULT.subscribe(lifecycleOwner, EventToListenTo.class, callback);
  * </code>
  *
- * Since methods are recognized based on the type of their parameter, each event must have a unique
- * parameter type. For every new event, create the parameter type as a class below. Give the class
- * a {@code public final} variable if the event should transmit data.
+ * Subscriptions given a {@link LifecycleOwner} are cancelled when it is destroyed, so listeners don't leak.
+ * Other subscriptions must be cancelled with {@link Subscription#cancel()}. Notifications that only
+ * concern some dates implement {@link Dated}, and listeners that display a single date can subscribe
+ * to that date only.
+ *
+ * Notifications may be posted from any thread, and are delivered on the main thread in the order they
+ * were posted, shortly after. A notification implementing {@link Coalescing} that is posted while one
+ * of the same type is still waiting is merged into it, so a burst is only delivered once.
  *
- * See more documentation <a href="https://github.com/google/guava/wiki/EventBusExplained">here</a>.
+ * For every new notification, create a class below. Give the class {@code public final} variables
+ * describing what changed, so listeners can ignore notifications that don't concern them.
+ *
+ * {@link #subscriptions}: Listeners for each notification type, in the order they subscribed. Only
+ *                         accessed on the main thread.
+ * {@link #pending}: Notifications waiting to be delivered. Guarded by itself.
+ * {@link #dispatchScheduled}: True if {@link #dispatch()} will run for {@link #pending}. Guarded by {@link #pending}.
  */
 public final class NotificationCenter
 {
-	public static final EventBus DEFAULT = new EventBus();
+	public static final NotificationCenter DEFAULT = new NotificationCenter();
+	private static final String TAG = NotificationCenter.class.getSimpleName();
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final Map<Class<?>, List<Subscription<?>>> subscriptions = new HashMap<>();
+	private final List<Object> pending = new ArrayList<>();
+	private boolean dispatchScheduled = false;
+
+	/**
+	 * A notification that only concerns some dates.
+	 */
+	public interface Dated
+	{
+		boolean affects(LocalDate date);
+	}
+
+	/**
+	 * A notification that can be merged with a later one of the same type.
+	 */
+	public interface Coalescing<T>
+	{
+		/**
+		 * @param later Notification posted after this one.
+		 * @return A notification describing the changes of both.
+		 */
+		T coalesce(T later);
+	}
+
+	/**
+	 * A listener subscribed to one type of notification.
+	 * {@link #date}: If not null, only {@link Dated} notifications affecting this date are delivered.
+	 */
+	public static final class Subscription<T>
+	{
+		private final NotificationCenter center;
+		private final Class<T> type;
+		@Nullable
+		private final LocalDate date;
+		private final Callback<T> listener;
+
+		private Subscription(NotificationCenter center, Class<T> type, @Nullable LocalDate date, Callback<T> listener)
+		{
+			this.center = center;
+			this.type = type;
+			this.date = date;
+			this.listener = listener;
+		}
+
+		/**
+		 * Stops delivering notifications to the listener, including any waiting to be delivered.
+		 */
+		@MainThread
+		public void cancel()
+		{
+			List<Subscription<?>> list = center.subscriptions.get(type);
+			if (list != null)
+				list.remove(this);
+		}
+
+		private void deliver(Object notification)
+		{
+			if (date != null && notification instanceof Dated && !((Dated) notification).affects(date))
+				return;
+			listener.execute(type.cast(notification));
+		}
+	}
+
+	/**
+	 * Subscribes to every notification of the given type.
+	 *
+	 * @param type Class of the notification.
+	 * @param listener Executed on the main thread with each notification.
+	 * @return Subscription, which must be cancelled once the listener is no longer needed.
+	 */
+	@MainThread
+	public <T> Subscription<T> subscribe(Class<T> type, Callback<T> listener)
+	{
+		return subscribe(type, null, listener);
+	}
+
+	/**
+	 * Subscribes to notifications of the given type that affect the given date. Notifications that
+	 * aren't {@link Dated} are always delivered.
+	 *
+	 * @param date Date the listener displays, or null for every date.
+	 * @see #subscribe(Class, Callback)
+	 */
+	@MainThread
+	public <T> Subscription<T> subscribe(Class<T> type, @Nullable LocalDate date, Callback<T> listener)
+	{
+		Subscription<T> subscription = new Subscription<>(this, type, date, listener);
+		List<Subscription<?>> list = subscriptions.get(type);
+		if (list == null)
+		{
+			list = new ArrayList<>();
+			subscriptions.put(type, list);
+		}
+		list.add(subscription);
+		return subscription;
+	}
+
+	/**
+	 * Subscribes until the owner is destroyed.
+	 *
+	 * @param owner Usually an activity, or a fragment's view lifecycle owner.
+	 * @see #subscribe(Class, Callback)
+	 */
+	@MainThread
+	public <T> void subscribe(LifecycleOwner owner, Class<T> type, Callback<T> listener)
+	{
+		subscribe(owner, type, null, listener);
+	}
+
+	/**
+	 * Subscribes to notifications affecting the date until the owner is destroyed.
+	 *
+	 * @see #subscribe(Class, LocalDate, Callback)
+	 * @see #subscribe(LifecycleOwner, Class, Callback)
+	 */
+	@MainThread
+	public <T> void subscribe(LifecycleOwner owner, Class<T> type, @Nullable LocalDate date, Callback<T> listener)
+	{
+		if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED)
+			return;
+		final Subscription<T> subscription = subscribe(type, date, listener);
+		owner.getLifecycle().addObserver(new LifecycleEventObserver()
+		{
+			@Override
+			public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event)
+			{
+				if (event != Lifecycle.Event.ON_DESTROY)
+					return;
+				source.getLifecycle().removeObserver(this);
+				subscription.cancel();
+			}
+		});
+	}
+
+	/**
+	 * Queues the notification for delivery on the main thread. May be called from any thread.
+	 * A {@link Coalescing} notification is merged with the last pending one of its type, and the merged
+	 * notification is delivered after every notification posted before this one.
+	 *
+	 * @param notification One of the classes below.
+	 */
+	@SuppressWarnings("unchecked")
+	public void post(Object notification)
+	{
+		synchronized (pending)
+		{
+			if (notification instanceof Coalescing)
+			{
+				for (int i = pending.size() - 1; i >= 0; i--)
+				{
+					if (pending.get(i).getClass() != notification.getClass())
+						continue;
+					Object coalesced = ((Coalescing<Object>) pending.get(i)).coalesce(notification);
+					if (i == pending.size() - 1)
+					{
+						pending.set(i, coalesced);
+						return;
+					}
+					//notifications posted in between must still be delivered before this one
+					pending.remove(i);
+					notification = coalesced;
+					break;
+				}
+			}
+			pending.add(notification);
+			if (dispatchScheduled)
+				return;
+			dispatchScheduled = true;
+		}
+		mainHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				dispatch();
+			}
+		});
+	}
+
+	/**
+	 * Delivers every pending notification. Notifications posted by listeners are delivered in the next dispatch.
+	 */
+	@MainThread
+	private void dispatch()
+	{
+		List<Object> notifications;
+		synchronized (pending)
+		{
+			notifications = new ArrayList<>(pending);
+			pending.clear();
+			dispatchScheduled = false;
+		}
+		for (Object notification : notifications)
+		{
+			List<Subscription<?>> list = subscriptions.get(notification.getClass());
+			if (list == null)
+				continue;
+			//copy, since listeners may subscribe or cancel while being notified
+			for (Subscription<?> subscription : new ArrayList<>(list))
+			{
+				if (!list.contains(subscription))
+					continue;
+				try
+				{
+					subscription.deliver(notification);
+				}
+				catch (RuntimeException e)
+				{
+					Log.e(TAG, "dispatch: listener for " + notification.getClass().getSimpleName() + " failed", e);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Indicates the user either
 	 * 1. Swiped to a new date in {@link com.cornellsatech.o_week.DatePagerAdapter}.
 	 * 2. Clicked on a new date in {@link DatePickerAdapter}.
-	 * Note: {@link UserData#selectedDate} will contain the new date.
+	 * {@link #date} is the new date, which {@link UserData#selectedDate} will also contain.
 	 */
-	public static class EventDateChanged {}
+	@AllArgsConstructor
+	public static class EventDateChanged implements Coalescing<EventDateChanged>
+	{
+		public final LocalDate date;
+
+		/**
+		 * Only the latest date matters.
+		 */
+		@Override
+		public EventDateChanged coalesce(EventDateChanged later)
+		{
+			return later;
+		}
+	}
 
 	/**
-	 * Indicates that new events have been loaded from settings or the database.
+	 * Indicates that events have been loaded from disk into {@link UserData}.
+	 * If {@link #complete} is false, only {@link UserData#sortedDates} and the events of
+	 * {@link UserData#selectedDate} are available, and another event will follow once everything is loaded.
 	 */
-	public static class EventInternetUpdate {}
+	@AllArgsConstructor
+	public static class EventDataReady implements Coalescing<EventDataReady>
+	{
+		public final boolean complete;
+
+		@Override
+		public EventDataReady coalesce(EventDataReady later)
+		{
+			return complete ? this : later;
+		}
+	}
 
 	/**
-	 * Indicates an event has been selected or unselected.
+	 * Indicates that an attempt to download updates from the database has completed, whether or not
+	 * it succeeded. Any changes will already have been posted in {@link EventCatalogChanged}.
 	 */
-	public static class EventSelectionChanged {}
+	public static class EventInternetUpdate implements Coalescing<EventInternetUpdate>
+	{
+		@Override
+		public EventInternetUpdate coalesce(EventInternetUpdate later)
+		{
+			return later;
+		}
+	}
+
+	/**
+	 * Indicates what {@link com.cornellsatech.o_week.SyncScheduler} is doing.
+	 * {@link #state}: What happened to the latest sync.
+	 * {@link #nextSyncAt}: When the next sync is scheduled, in epoch millis, or 0 while syncing.
+	 */
+	@AllArgsConstructor
+	public static class EventSyncStatus implements Coalescing<EventSyncStatus>
+	{
+		public final State state;
+		public final long nextSyncAt;
+
+		public enum State
+		{
+			RUNNING, SKIPPED, SUCCEEDED, FAILED
+		}
+
+		/**
+		 * Only the latest status matters.
+		 */
+		@Override
+		public EventSyncStatus coalesce(EventSyncStatus later)
+		{
+			return later;
+		}
+	}
 
 	/**
-	 * Indicates a new {@link Category} has been selected as the filter for {@link FeedAdapter}.
+	 * Indicates that updates from the database changed events or categories. Posted for each batch of
+	 * changes merged while an update downloads.
+	 * {@link #diff} describes exactly what changed, so listeners can ignore unrelated changes.
 	 */
-	public static class EventFilterChanged {}
+	@AllArgsConstructor
+	public static class EventCatalogChanged implements Dated, Coalescing<EventCatalogChanged>
+	{
+		public final EventDiff diff;
+
+		@Override
+		public boolean affects(LocalDate date)
+		{
+			return diff.affects(date);
+		}
+
+		/**
+		 * Batches merged before listeners were notified are delivered as one change.
+		 */
+		@Override
+		public EventCatalogChanged coalesce(EventCatalogChanged later)
+		{
+			return new EventCatalogChanged(diff.followedBy(later.diff));
+		}
+	}
+
+	/**
+	 * Indicates events have been selected or unselected.
+	 * {@link #event} is the only event that changed, and {@link #date} its {@link Event#getStartDate()}.
+	 * If many events may have changed, both are null and listeners should assume every date changed.
+	 */
+	public static class EventSelectionChanged implements Dated, Coalescing<EventSelectionChanged>
+	{
+		@Nullable
+		public final Event event;
+		@Nullable
+		public final LocalDate date;
+
+		public EventSelectionChanged()
+		{
+			this(null);
+		}
+
+		public EventSelectionChanged(@Nullable Event event)
+		{
+			this.event = event;
+			this.date = event == null ? null : event.getStartDate();
+		}
+
+		/**
+		 * Returns whether events on the given date may have been selected or unselected.
+		 */
+		@Override
+		public boolean affects(LocalDate date)
+		{
+			return this.date == null || this.date.equals(date);
+		}
+
+		/**
+		 * Unless both are for the same event, listeners must assume every event changed.
+		 */
+		@Override
+		public EventSelectionChanged coalesce(EventSelectionChanged later)
+		{
+			if (event != null && event.equals(later.event))
+				return later;
+			return new EventSelectionChanged();
+		}
+	}
+
+	/**
+	 * Indicates the filters for {@link FeedAdapter} changed.
+	 * {@link #flippedCategories}: {@link CategoryIds} of {@link Category}s that were selected or unselected.
+	 * {@link #flippedRequired}: True if the filter for required events was turned on or off.
+	 */
+	@AllArgsConstructor
+	public static class EventFilterChanged implements Coalescing<EventFilterChanged>
+	{
+		public final BitSet flippedCategories;
+		public final boolean flippedRequired;
+
+		/**
+		 * Returns true if the filters are the same as before, because every change was undone.
+		 */
+		public boolean isEmpty()
+		{
+			return flippedCategories.isEmpty() && !flippedRequired;
+		}
+
+		/**
+		 * A filter flipped twice is back to where it started.
+		 */
+		@Override
+		public EventFilterChanged coalesce(EventFilterChanged later)
+		{
+			BitSet flipped = (BitSet) flippedCategories.clone();
+			flipped.xor(later.flippedCategories);
+			return new EventFilterChanged(flipped, flippedRequired != later.flippedRequired);
+		}
+	}
 }
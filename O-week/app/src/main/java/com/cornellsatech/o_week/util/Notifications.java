@@ -6,65 +6,87 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.cornellsatech.o_week.DetailsActivity;
 import com.cornellsatech.o_week.R;
 import com.cornellsatech.o_week.UserData;
 import com.cornellsatech.o_week.models.Event;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.joda.time.DateTimeConstants;
 
-import org.joda.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Handles creation & destruction of all local notifications.
+ *
+ * Upcoming reminders are kept in a queue sorted by when they're due, saved as {@link ReminderManifest}.
+ * Only one alarm is ever set, for the first reminder in the queue. When it goes off, {@link AlarmReceiver}
+ * posts every reminder that's due and sets the alarm for the next one. Scheduling reminders builds a
+ * new queue and reconciles it with the saved one using {@link ReminderReconciler}, so the file is only
+ * rewritten if a reminder changed, and the alarm is only set again if its time changed. Since alarms are
+ * erased when the app is force stopped, {@link #rescheduleForEvents(Context)} sets it again regardless.
+ *
+ * A reminder stays in the queue until it's posted, even once it's due, since the alarm may go off late
+ * (in Doze) or be erased (when the app is force stopped). An alarm set for a time that has passed goes
+ * off right away, so those reminders are posted as soon as the alarm is set again.
+ *
+ * {@link #ALARM_REQUEST_CODE}: Identifies the single alarm, so setting it again replaces it.
+ * {@link #STALE_MILLIS}: Reminders for events that started longer ago than this are dropped instead of
+ *                        posted late.
+ * {@link #MAX_REARMS}: How many times {@link #postDue(Context)} sets the alarm again if the queue keeps
+ *                       changing. The app sets the alarm itself after each change, so this only narrows
+ *                       the window in which the two processes race.
+ * {@link #QUEUE_THREAD}: Reads, reconciles and saves the queue. Every change to the queue in the app's
+ *                        process runs on it, in the order it was made, so a change is never based on a
+ *                        queue that's being replaced. {@link AlarmReceiver} runs in another process, so
+ *                        {@link #postDue(Context)} checks the queue again after setting the alarm.
  */
 public final class Notifications
 {
+	private static final int ALARM_REQUEST_CODE = 0;
+	private static final long STALE_MILLIS = DateTimeConstants.MILLIS_PER_HOUR;
+	private static final int MAX_REARMS = 3;
+	private static final ExecutorService QUEUE_THREAD = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("reminder-queue").setDaemon(true).build());
 	private static final String TAG = Notifications.class.getSimpleName();
 
 	//suppress constructor
 	private Notifications(){}
 
-	/**
-	 * {@link #scheduleForEvent(Event, int, Context)} if you're certain hoursBefore is saved and the
-	 * extra processing power spent retrieving it is necessary. For example, if you're calling this
-	 * in a loop, it'd be better to retrieve hoursBefore once instead of calling this method and
-	 * retrieving it multiple times.
-	 *
-	 * @param event Event to schedule notifications for.
-	 */
-	public static void scheduleForEvent(Event event, Context context)
-	{
-		scheduleForEvent(event, Settings.getNotifyMe(context), context);
-	}
 	/**
 	 * Schedules a notification for the given event, to be triggered a number of hours before the event
-	 * actually starts.
+	 * actually starts. The event must already be in {@link UserData#selectedEvents}.
 	 *
 	 * @param event Event to schedule notifications for.
-	 * @param hoursBefore # of hours before the event starts that the notification will be sent.
 	 * @see AlarmReceiver
 	 */
-	public static void scheduleForEvent(Event event, int hoursBefore, Context context)
+	public static void scheduleForEvent(Event event, Context context)
 	{
-		PendingIntent pendingIntent = intentForEvent(event, context);
-		//start time
-		LocalDateTime alarmTime = event.getStartDate().toLocalDateTime(event.getStartTime())
-				.minusHours(hoursBefore);
-		AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-		alarmManager.set(AlarmManager.RTC_WAKEUP, alarmTime.toDateTime().getMillis(), pendingIntent);
+		scheduleForEvents(context);
 	}
 	/**
 	 * Creates and sends a notification for the given event.
 	 *
-	 * @param event Event to create notifications for.
+	 * @param event What the reminder of the event shows.
 	 */
-	public static void createForEvent(Event event, Context context)
+	public static void createForEvent(ReminderManifest.Entry event, Context context)
 	{
 		//intent to open DetailsActivity on click
-		Intent intent = new Intent(context, DetailsActivity.class);
-		intent.putExtra(DetailsActivity.EVENT_KEY, event.toString());
 		PendingIntent pendingIntent = PendingIntent.getActivity(context, event.getPk().hashCode(),
-				intent, PendingIntent.FLAG_CANCEL_CURRENT);
+				DetailsActivity.intentForEvent(event.getPk(), context), PendingIntent.FLAG_CANCEL_CURRENT);
 
 		Notification.Builder builder = new Notification.Builder(context);
 		builder.setVisibility(Notification.VISIBILITY_PUBLIC)
@@ -79,31 +101,27 @@ public final class Notifications
 		manager.notify(event.getPk().hashCode(), builder.build());
 	}
 	/**
-	 * Destroys any notification that was prepared for the given event.
+	 * Removes the given event's reminder from the queue.
 	 *
 	 * @param event Event to remove notifications for.
 	 */
 	public static void unscheduleForEvent(Event event, Context context)
 	{
-		PendingIntent pendingIntent = intentForEvent(event, context);
-		AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-		alarmManager.cancel(pendingIntent);
-	}
-	/**
-	 * Returns an Intent to open to {@link AlarmReceiver}.
-	 * Note: {@link Event#getPk()} is used as {@link PendingIntent}'s requestCode, a unique identifier
-	 * for when the alarm has to be updated/cancelled.
-	 *
-	 * @param event The event to open in {@link DetailsActivity}
-	 * @return PendingIntent (Pending = system will trigger it later)
-	 */
-	private static PendingIntent intentForEvent(Event event, Context context)
-	{
-		Intent intent = new Intent(context, AlarmReceiver.class);
-		intent.putExtra(AlarmReceiver.EVENT_PK_KEY, event.getPk());
-		//if a new notification is created with the same intent, destroy the old one (cancel current)
-		return PendingIntent.getBroadcast(context, event.getPk().hashCode(), intent,
-				PendingIntent.FLAG_CANCEL_CURRENT);
+		final String pk = event.getPk();
+		final Context appContext = context.getApplicationContext();
+		QUEUE_THREAD.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				List<ReminderManifest.Entry> queue = ReminderManifest.readAll(appContext);
+				Iterator<ReminderManifest.Entry> entries = queue.iterator();
+				while (entries.hasNext())
+					if (entries.next().getPk().equals(pk))
+						entries.remove();
+				reconcile(queue, false, appContext);
+			}
+		});
 	}
 	/**
 	 * Helper function for {@link #scheduleForEvents(int, Context)}. Use this when you're certain that
@@ -114,21 +132,207 @@ public final class Notifications
 		scheduleForEvents(Settings.getNotifyMe(context), context);
 	}
 	/**
-	 * Schedule notifications for all selected events
+	 * Schedule notifications for all selected events, replacing the queue. The new queue is built from
+	 * {@link UserData#selectedEvents} right away, so call this on the main thread.
 	 *
 	 * @param hoursBefore # of hours before the event starts that the notification will be sent.
 	 */
+	@MainThread
 	public static void scheduleForEvents(int hoursBefore, Context context)
 	{
-		for (Event event : UserData.selectedEvents)
-			scheduleForEvent(event, hoursBefore, context);
+		replaceQueue(queueFor(UserData.selectedEvents, hoursBefore, System.currentTimeMillis()), false, context);
+	}
+	/**
+	 * Schedule notifications for all selected events, like {@link #scheduleForEvents(Context)}, and set the
+	 * alarm again even if its time didn't change. Call when the app starts, since the alarm is erased if
+	 * the app was force stopped.
+	 */
+	@MainThread
+	public static void rescheduleForEvents(Context context)
+	{
+		replaceQueue(queueFor(UserData.selectedEvents, Settings.getNotifyMe(context), System.currentTimeMillis()),
+				true, context);
 	}
 	/**
 	 * Destroys scheduled notifications for all selected events
 	 */
 	public static void unscheduleForEvents(Context context)
 	{
+		replaceQueue(Collections.<ReminderManifest.Entry>emptyList(), false, context);
+	}
+	/**
+	 * Replaces the alarms older versions set for each selected event with the queue. Those alarms were
+	 * identified by {@link Event#getPk()}'s hash, and only differed in extras, which aren't compared
+	 * when matching {@link PendingIntent}s.
+	 */
+	public static void replaceLegacyAlarms(Context context)
+	{
+		AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		Intent intent = new Intent(context, AlarmReceiver.class);
 		for (Event event : UserData.selectedEvents)
-			unscheduleForEvent(event, context);
+			alarmManager.cancel(PendingIntent.getBroadcast(context, event.getPk().hashCode(), intent, PendingIntent.FLAG_UPDATE_CURRENT));
+		scheduleForEvents(context);
+	}
+	/**
+	 * Sets the alarm for the first reminder in the saved queue, for when alarms were erased, such as on
+	 * reboot. Doesn't need events to be loaded.
+	 */
+	public static void rearm(Context context)
+	{
+		armFirstAfter(ReminderManifest.readAll(context), ReminderManifest.readPostedThrough(context), context);
+	}
+	/**
+	 * Posts every reminder in the saved queue that's due and hasn't been posted, however late, then sets
+	 * the alarm for the next one. Which reminders were posted is tracked with
+	 * {@link ReminderManifest#readPostedThrough(Context)}, not the alarm, so reminders added since the
+	 * alarm was set, or whose alarm was replaced, are still posted.
+	 *
+	 * The app may replace the queue after it's read here but before the alarm is set, so the alarm could be
+	 * set for a reminder that was removed, or after one that was added. The saved queue is read again
+	 * after setting the alarm, and the alarm is set again if its first reminder changed.
+	 */
+	static void postDue(Context context)
+	{
+		long now = System.currentTimeMillis();
+		long postedThrough = ReminderManifest.readPostedThrough(context);
+		long posted = postedThrough;
+		List<ReminderManifest.Entry> queue = ReminderManifest.readAll(context);
+		for (ReminderManifest.Entry entry : queue)
+		{
+			if (entry.getFireAt() <= postedThrough)
+				continue;
+			if (entry.getFireAt() > now)
+				break;
+			if (entry.getStart() > now - STALE_MILLIS)
+				createForEvent(entry, context);
+			posted = entry.getFireAt();
+		}
+		if (posted != postedThrough)
+			ReminderManifest.writePostedThrough(context, posted);
+
+		ReminderManifest.Entry armed = ReminderReconciler.firstAfter(queue, posted);
+		arm(armed, context);
+		for (int i = 0; i < MAX_REARMS; i++)
+		{
+			ReminderManifest.Entry next = ReminderReconciler.firstAfter(ReminderManifest.readAll(context), posted);
+			if (next == null ? armed == null : armed != null && next.getFireAt() == armed.getFireAt())
+				return;
+			armed = next;
+			arm(armed, context);
+		}
+	}
+	/**
+	 * Returns a reminder for each event that isn't stale, sorted by when it's due. Reminders that are
+	 * already due are included, since they may not have been posted yet; {@link #reconcile} drops those
+	 * that were.
+	 *
+	 * @param hoursBefore # of hours before the event starts that the notification will be sent.
+	 * @param now Current time, in epoch millis.
+	 */
+	private static List<ReminderManifest.Entry> queueFor(Collection<Event> events, int hoursBefore, long now)
+	{
+		List<ReminderManifest.Entry> queue = new ArrayList<>(events.size());
+		for (Event event : events)
+		{
+			if (event.getStart() <= now - STALE_MILLIS)
+				continue;
+			long fireAt = event.getStart() - hoursBefore * (long) DateTimeConstants.MILLIS_PER_HOUR;
+			queue.add(new ReminderManifest.Entry(event, fireAt));
+		}
+		Collections.sort(queue, new Comparator<ReminderManifest.Entry>()
+		{
+			@Override
+			public int compare(ReminderManifest.Entry entry1, ReminderManifest.Entry entry2)
+			{
+				return Long.compare(entry1.getFireAt(), entry2.getFireAt());
+			}
+		});
+		return queue;
+	}
+	/**
+	 * Reconciles the saved queue with the given one on {@link #QUEUE_THREAD}.
+	 *
+	 * @param queue Sorted by {@link ReminderManifest.Entry#getFireAt()}.
+	 * @param forceRearm True to set the alarm again even if its time didn't change.
+	 */
+	private static void replaceQueue(final List<ReminderManifest.Entry> queue, final boolean forceRearm, Context context)
+	{
+		final Context appContext = context.getApplicationContext();
+		QUEUE_THREAD.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				reconcile(queue, forceRearm, appContext);
+			}
+		});
+	}
+	/**
+	 * Replaces the saved queue, only saving it if a reminder changed, then sets the alarm for its first
+	 * reminder if that changed. Reminders that were already posted are left out of both queues.
+	 *
+	 * @param queue Sorted by {@link ReminderManifest.Entry#getFireAt()}.
+	 * @param forceRearm True to set the alarm again even if its time didn't change.
+	 */
+	@WorkerThread
+	private static void reconcile(List<ReminderManifest.Entry> queue, boolean forceRearm, Context context)
+	{
+		long postedThrough = ReminderManifest.readPostedThrough(context);
+		List<ReminderManifest.Entry> unposted = unposted(queue, postedThrough);
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(
+				unposted(ReminderManifest.readAll(context), postedThrough), unposted, postedThrough, forceRearm);
+		if (result.isChanged())
+			ReminderManifest.write(context, unposted);
+		if (result.isRearm())
+			arm(result.getNext(), context);
+		Log.i(TAG, "Reminders: " + result.getAdded() + " added, " + result.getCancelled() + " cancelled, " +
+				result.getUpdated() + " updated, " + result.getOperationsSaved() + " writes skipped");
+	}
+	/**
+	 * Returns the reminders in the queue due after the given time.
+	 *
+	 * @param postedThrough {@link ReminderManifest#readPostedThrough(Context)}
+	 */
+	private static List<ReminderManifest.Entry> unposted(List<ReminderManifest.Entry> queue, long postedThrough)
+	{
+		List<ReminderManifest.Entry> unposted = new ArrayList<>(queue.size());
+		for (ReminderManifest.Entry entry : queue)
+			if (entry.getFireAt() > postedThrough)
+				unposted.add(entry);
+		return unposted;
+	}
+	/**
+	 * Sets the alarm for the first reminder due after the given time, or cancels it if there is none.
+	 *
+	 * @param queue Sorted by {@link ReminderManifest.Entry#getFireAt()}.
+	 * @param after Time in epoch millis. Reminders due at or before it were posted, so they're skipped.
+	 */
+	private static void armFirstAfter(List<ReminderManifest.Entry> queue, long after, Context context)
+	{
+		arm(ReminderReconciler.firstAfter(queue, after), context);
+	}
+	/**
+	 * Sets the alarm for the reminder, or cancels it if there is none.
+	 */
+	private static void arm(@Nullable ReminderManifest.Entry next, Context context)
+	{
+		AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		if (next == null)
+			alarmManager.cancel(alarmIntent(0, context));
+		else
+			alarmManager.set(AlarmManager.RTC_WAKEUP, next.getFireAt(), alarmIntent(next.getFireAt(), context));
+	}
+	/**
+	 * Returns an Intent to open to {@link AlarmReceiver}.
+	 * Note: Every alarm uses the same requestCode, so setting or cancelling any of them replaces the last.
+	 *
+	 * @param fireAt {@link ReminderManifest.Entry#getFireAt()} of the reminder the alarm is set for.
+	 * @return PendingIntent (Pending = system will trigger it later)
+	 */
+	private static PendingIntent alarmIntent(long fireAt, Context context)
+	{
+		Intent intent = new Intent(context, AlarmReceiver.class);
+		intent.putExtra(AlarmReceiver.FIRE_AT_KEY, fireAt);
+		return PendingIntent.getBroadcast(context, ALARM_REQUEST_CODE, intent, PendingIntent.FLAG_UPDATE_CURRENT);
 	}
 }
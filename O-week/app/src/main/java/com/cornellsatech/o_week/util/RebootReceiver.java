@@ -7,11 +7,12 @@ import android.content.Intent;
 public class RebootReceiver extends BroadcastReceiver
 {
 	/**
-	 * Runs when device is rebooted. Recreates all notifications.
+	 * Runs when device is rebooted. Sets the alarm for the next reminder again, from the saved queue,
+	 * since events haven't been loaded yet.
 	 */
 	@Override
 	public void onReceive(Context context, Intent intent)
 	{
-		Notifications.scheduleForEvents(context);
+		Notifications.rearm(context);
 	}
 }
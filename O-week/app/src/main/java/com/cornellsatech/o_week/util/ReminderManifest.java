@@ -0,0 +1,286 @@
+package com.cornellsatech.o_week.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.cornellsatech.o_week.models.Event;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Saves every reminder that hasn't been posted, sorted by when it's due, along with what it needs to
+ * show. This is the queue {@link Notifications} arms its single alarm from, and {@link AlarmReceiver}
+ * posts notifications by reading this small file, without loading the catalog. Rewritten whenever
+ * reminders are scheduled or cancelled.
+ *
+ * Reminders stay in the queue until they're posted, even once they're due, since an alarm may go off
+ * late or be erased. When the last reminder posted was due is saved separately, as a watermark: only
+ * {@link AlarmReceiver} writes it, and only {@link Notifications}' queue thread writes the queue, so
+ * neither process overwrites what the other saved.
+ *
+ * File layout (see {@link DataOutputStream}):
+ * <pre>
+ *     int      {@link #MAGIC}
+ *     int      {@link #VERSION}
+ *     int      number of entries, then for each: UTF pk, UTF name, UTF location, long start, long fireAt
+ * </pre>
+ */
+public final class ReminderManifest
+{
+	private static final String FILE_NAME = "reminders.bin";
+	private static final String POSTED_FILE_NAME = "reminders.posted";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int MAGIC = 0x4F57524D;   //"OWRM"
+	private static final int VERSION = 2;
+	private static final String TAG = ReminderManifest.class.getSimpleName();
+
+	//suppress default constructor
+	private ReminderManifest(){}
+
+	/**
+	 * A reminder for an event, and what it shows.
+	 * {@link #start}: {@link Event#getStart()}
+	 * {@link #fireAt}: When the reminder is due, in epoch millis.
+	 */
+	@Value
+	public static class Entry
+	{
+		private final String pk;
+		private final String name;
+		private final String location;
+		private final long start;
+		private final long fireAt;
+
+		/**
+		 * @param event Event to remind the user of.
+		 * @param fireAt When the reminder is due, in epoch millis.
+		 */
+		public Entry(Event event, long fireAt)
+		{
+			this(event.getPk(), nonNull(event.getName()), nonNull(event.getLocation()), event.getStart(), fireAt);
+		}
+
+		private Entry(String pk, String name, String location, long start, long fireAt)
+		{
+			this.pk = pk;
+			this.name = name;
+			this.location = location;
+			this.start = start;
+			this.fireAt = fireAt;
+		}
+	}
+
+	/**
+	 * Returns whether a manifest in the current format has been saved.
+	 */
+	public static boolean exists(Context context)
+	{
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new FileInputStream(file(context)));
+			return in.readInt() == MAGIC && in.readInt() == VERSION;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Replaces the manifest with the given entries. The new manifest is written to a temporary file, then
+	 * renamed over the old one, so a receiver reading it at the same time sees either the old or new
+	 * manifest. Not thread safe: only call it from {@link Notifications}' queue thread.
+	 *
+	 * @param entries Reminders that haven't been posted, sorted by {@link Entry#getFireAt()}.
+	 */
+	@WorkerThread
+	public static void write(Context context, List<Entry> entries)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Entry entry : entries)
+			{
+				out.writeUTF(entry.getPk());
+				out.writeUTF(entry.getName());
+				out.writeUTF(entry.getLocation());
+				out.writeLong(entry.getStart());
+				out.writeLong(entry.getFireAt());
+			}
+			out.flush();
+			replace(file(context), bytes);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not save reminder manifest.", e);
+		}
+	}
+
+	/**
+	 * Returns when the last reminder posted was due. Every reminder due at or before it has been posted.
+	 *
+	 * @return Epoch millis, or 0 if no reminder has been posted.
+	 */
+	public static long readPostedThrough(Context context)
+	{
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new FileInputStream(postedFile(context)));
+			return in.readLong();
+		}
+		catch (FileNotFoundException e)
+		{
+			return 0;
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not read when reminders were last posted.", e);
+			return 0;
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Saves when the last reminder posted was due. Only called by {@link AlarmReceiver}, whose broadcasts
+	 * are received one at a time.
+	 *
+	 * @param postedThrough {@link Entry#getFireAt()} of the last reminder posted.
+	 */
+	public static void writePostedThrough(Context context, long postedThrough)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeLong(postedThrough);
+			out.flush();
+			replace(postedFile(context), bytes);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not save when reminders were last posted.", e);
+		}
+	}
+
+	/**
+	 * Writes the bytes to a temporary file, then renames it over the file, so a reader in another process
+	 * sees either the old or new contents.
+	 */
+	private static void replace(File file, ByteArrayOutputStream bytes) throws IOException
+	{
+		File temp = new File(file.getPath() + TEMP_SUFFIX);
+		FileOutputStream fileStream = new FileOutputStream(temp);
+		try
+		{
+			bytes.writeTo(fileStream);
+			fileStream.getFD().sync();
+			fileStream.close();
+			if (!temp.renameTo(file))
+				throw new IOException("Could not rename " + temp + " to " + file);
+		}
+		catch (IOException e)
+		{
+			closeQuietly(fileStream);
+			temp.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns every reminder that hasn't been posted, and possibly some that have. Only this file is read.
+	 *
+	 * @return Entries sorted by {@link Entry#getFireAt()}. Empty if there is no manifest or it could not be read.
+	 */
+	public static List<Entry> readAll(Context context)
+	{
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file(context))));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				Log.e(TAG, "Reminder manifest has an unknown format, ignoring it.");
+				return new ArrayList<>();
+			}
+			int numEntries = in.readInt();
+			List<Entry> entries = new ArrayList<>(numEntries);
+			for (int i = 0; i < numEntries; i++)
+				entries.add(new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong()));
+			return entries;
+		}
+		catch (FileNotFoundException e)
+		{
+			return new ArrayList<>();
+		}
+		catch (EOFException e)
+		{
+			Log.e(TAG, "Reminder manifest is corrupt, ignoring it.", e);
+			return new ArrayList<>();
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Could not read reminder manifest.", e);
+			return new ArrayList<>();
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+	}
+
+	private static String nonNull(@Nullable String string)
+	{
+		return string == null ? "" : string;
+	}
+
+	private static void closeQuietly(@Nullable Closeable closeable)
+	{
+		if (closeable == null)
+			return;
+		try
+		{
+			closeable.close();
+		}
+		catch (IOException ignored) {}
+	}
+
+	private static File file(Context context)
+	{
+		return new File(context.getFilesDir(), FILE_NAME);
+	}
+
+	private static File postedFile(Context context)
+	{
+		return new File(context.getFilesDir(), POSTED_FILE_NAME);
+	}
+}
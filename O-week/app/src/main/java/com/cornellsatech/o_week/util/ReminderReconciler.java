@@ -0,0 +1,111 @@
+package com.cornellsatech.o_week.util;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Compares the reminders that are scheduled with the reminders that should be, so {@link Notifications}
+ * only rewrites {@link ReminderManifest} if a reminder changed, and sets a single alarm instead of one per
+ * reminder. The alarm is only set again if the time of its first reminder changed, unless the caller
+ * forces it, since the system erases alarms when the app is force stopped and the saved queue can't tell.
+ */
+final class ReminderReconciler
+{
+	//suppress instantiation
+	private ReminderReconciler(){}
+
+	/**
+	 * Differences between two queues, and what must be done about them.
+	 *
+	 * {@link #added}: Number of reminders that weren't scheduled.
+	 * {@link #cancelled}: Number of scheduled reminders that are no longer wanted.
+	 * {@link #updated}: Number of scheduled reminders whose time or text changed.
+	 * {@link #next}: First reminder due after now in the new queue, or null if there is none.
+	 * {@link #rearm}: True if the alarm must be set for {@link #next}, or cancelled if that's null.
+	 */
+	@Getter
+	@AllArgsConstructor
+	static class Result
+	{
+		private final int added;
+		private final int cancelled;
+		private final int updated;
+		@Nullable
+		private final ReminderManifest.Entry next;
+		private final boolean rearm;
+
+		/**
+		 * Returns whether the queue must be saved again.
+		 */
+		boolean isChanged()
+		{
+			return added > 0 || cancelled > 0 || updated > 0;
+		}
+
+		/**
+		 * Returns how many of the 2 writes rescheduling every reminder makes were skipped: saving the queue,
+		 * and setting the alarm.
+		 */
+		int getOperationsSaved()
+		{
+			return (isChanged() ? 0 : 1) + (rearm ? 0 : 1);
+		}
+	}
+
+	/**
+	 * @param scheduled Saved queue, sorted by {@link ReminderManifest.Entry#getFireAt()}.
+	 * @param desired New queue, sorted by {@link ReminderManifest.Entry#getFireAt()}.
+	 * @param postedThrough {@link ReminderManifest#readPostedThrough}. Reminders due at or before it were
+	 *                      posted, so they're never armed.
+	 * @param forceRearm True to set the alarm again even if its time didn't change, in case it was erased.
+	 */
+	static Result reconcile(List<ReminderManifest.Entry> scheduled, List<ReminderManifest.Entry> desired,
+	                        long postedThrough, boolean forceRearm)
+	{
+		Map<String, ReminderManifest.Entry> scheduledForPk = new HashMap<>(scheduled.size());
+		for (ReminderManifest.Entry entry : scheduled)
+			scheduledForPk.put(entry.getPk(), entry);
+
+		int added = 0;
+		int updated = 0;
+		for (ReminderManifest.Entry entry : desired)
+		{
+			ReminderManifest.Entry old = scheduledForPk.remove(entry.getPk());
+			if (old == null)
+				added++;
+			else if (!old.equals(entry))
+				updated++;
+		}
+		int cancelled = scheduledForPk.size();
+
+		ReminderManifest.Entry oldNext = firstAfter(scheduled, postedThrough);
+		ReminderManifest.Entry next = firstAfter(desired, postedThrough);
+		boolean rearm;
+		if (forceRearm)
+			rearm = oldNext != null || next != null;
+		//the alarm only holds the time it's set for, so a different reminder at the same time needs no change
+		else if (oldNext == null || next == null)
+			rearm = oldNext != next;
+		else
+			rearm = oldNext.getFireAt() != next.getFireAt();
+		return new Result(added, cancelled, updated, next, rearm);
+	}
+
+	/**
+	 * Returns the first reminder in the queue due after the given time, or null if there is none.
+	 */
+	@Nullable
+	static ReminderManifest.Entry firstAfter(List<ReminderManifest.Entry> queue, long after)
+	{
+		for (ReminderManifest.Entry entry : queue)
+			if (entry.getFireAt() > after)
+				return entry;
+		return null;
+	}
+}
@@ -0,0 +1,223 @@
+package com.cornellsatech.o_week.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A network request running on one of {@link RequestEngine}'s pools. Can be waited on like any
+ * {@link java.util.concurrent.Future}, or given a {@link Callback} that is executed on the main thread.
+ *
+ * Cancelling a request interrupts its thread and disconnects its connection, so a slow server can't
+ * keep a thread busy. Once cancelled, the callback is never executed.
+ *
+ * {@link #priority}: Requests with higher priority leave the queue first. Equal priorities are first come,
+ *                    first served.
+ * {@link #sequence}: Order the request was created in, to break ties between equal priorities.
+ * {@link #timeoutMillis}: Connect and read timeout of every connection opened with {@link #openConnection(String)}.
+ * {@link #connection}: The connection currently open, if any. Disconnected on cancel.
+ * {@link #lifecycle}: Lifecycle the request is bound to, if any. See {@link #bindTo(LifecycleOwner)}.
+ *
+ * @param <T> Type of the result. Null if the request failed.
+ */
+public class Request<T> extends FutureTask<T> implements Comparable<Request<?>>, LifecycleEventObserver
+{
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+	private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+	private static final String TAG = Request.class.getSimpleName();
+	private final Priority priority;
+	private final long sequence = SEQUENCE.getAndIncrement();
+	private final int timeoutMillis;
+	@Nullable
+	private final Callback<T> callback;
+	@Nullable
+	private volatile HttpURLConnection connection;
+	@Nullable
+	private Lifecycle lifecycle;
+
+	/**
+	 * Work done in the background by a request. Open connections with {@link Request#openConnection(String)}
+	 * so they are cancelled along with the request.
+	 */
+	interface Work<T>
+	{
+		@WorkerThread
+		T run(Request<T> request) throws Exception;
+	}
+
+	public enum Priority
+	{
+		HIGH, NORMAL, LOW
+	}
+
+	Request(Work<T> work, Priority priority, int timeoutMillis, @Nullable Callback<T> callback)
+	{
+		this(new WorkCallable<>(work), priority, timeoutMillis, callback);
+	}
+
+	private Request(WorkCallable<T> callable, Priority priority, int timeoutMillis, @Nullable Callback<T> callback)
+	{
+		super(callable);
+		callable.request = this;
+		this.priority = priority;
+		this.timeoutMillis = timeoutMillis;
+		this.callback = callback;
+	}
+
+	/**
+	 * Cancels this request when the lifecycle is destroyed, so the callback never touches a dead
+	 * activity. Does nothing if the request has already finished.
+	 *
+	 * @param owner Activity or fragment that started the request.
+	 * @return This request, for chaining.
+	 */
+	@MainThread
+	public Request<T> bindTo(LifecycleOwner owner)
+	{
+		if (isDone() || lifecycle != null)
+			return this;
+		lifecycle = owner.getLifecycle();
+		if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED)
+			cancel(true);
+		else
+			lifecycle.addObserver(this);
+		return this;
+	}
+
+	@Override
+	public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event)
+	{
+		if (event == Lifecycle.Event.ON_DESTROY)
+			cancel(true);
+	}
+
+	/**
+	 * Opens a connection with this request's timeouts. The connection is disconnected if the request is
+	 * cancelled, which unblocks any read in progress.
+	 *
+	 * @param urlString Address to connect to.
+	 * @return Connection that has not connected yet.
+	 * @throws IOException If the URL is malformed, or the request has been cancelled.
+	 */
+	@WorkerThread
+	HttpURLConnection openConnection(String urlString) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+		connection.setConnectTimeout(timeoutMillis);
+		connection.setReadTimeout(timeoutMillis);
+		this.connection = connection;
+		if (isCancelled())
+		{
+			connection.disconnect();
+			throw new IOException("Request cancelled");
+		}
+		return connection;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		HttpURLConnection connection = this.connection;
+		if (cancelled && connection != null)
+			connection.disconnect();
+		return cancelled;
+	}
+
+	/**
+	 * Executes the callback on the main thread, unless the request was cancelled in the meantime.
+	 */
+	@Override
+	protected void done()
+	{
+		connection = null;
+		MAIN_HANDLER.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (lifecycle != null)
+					lifecycle.removeObserver(Request.this);
+				lifecycle = null;
+				if (callback == null || isCancelled())
+					return;
+				callback.execute(getOrNull());
+			}
+		});
+	}
+
+	/**
+	 * Returns the result without blocking. Only call once {@link #isDone()}.
+	 * @return Result, or null if the request failed or was cancelled.
+	 */
+	@Nullable
+	private T getOrNull()
+	{
+		try
+		{
+			return get();
+		}
+		catch (ExecutionException | CancellationException | InterruptedException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Orders requests by {@link #priority}, then {@link #sequence}.
+	 */
+	@Override
+	public int compareTo(@NonNull Request<?> o)
+	{
+		if (priority != o.priority)
+			return priority.compareTo(o.priority);
+		return Long.compare(sequence, o.sequence);
+	}
+
+	/**
+	 * Runs the request's work, logging failures. Failed requests return null instead of throwing, like
+	 * the rest of {@link Internet}.
+	 */
+	private static class WorkCallable<T> implements Callable<T>
+	{
+		private final Work<T> work;
+		private Request<T> request;
+
+		private WorkCallable(Work<T> work)
+		{
+			this.work = work;
+		}
+
+		@Override
+		public T call()
+		{
+			try
+			{
+				return work.run(request);
+			}
+			catch (Exception e)
+			{
+				if (!request.isCancelled())
+					Log.e(TAG, "Request failed", e);
+				return null;
+			}
+		}
+	}
+}
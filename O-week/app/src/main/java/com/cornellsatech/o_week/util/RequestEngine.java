@@ -0,0 +1,92 @@
+package com.cornellsatech.o_week.util;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every {@link Request} made by {@link Internet}. API calls and image downloads have separate pools,
+ * so an image never waits behind a slow API call and vice versa. Each pool has a fixed number of threads;
+ * extra requests wait in a queue ordered by {@link Request.Priority}.
+ *
+ * {@link #API_POOL}: Small JSON requests to the database.
+ * {@link #IMAGE_POOL}: Image downloads, which are larger and more numerous.
+ */
+final class RequestEngine
+{
+	private static final int API_THREADS = 2;
+	private static final int IMAGE_THREADS = 3;
+	private static final int API_TIMEOUT_MILLIS = 15_000;
+	private static final int IMAGE_TIMEOUT_MILLIS = 20_000;
+	private static final ThreadPoolExecutor API_POOL = createPool(API_THREADS, "api-%d");
+	private static final ThreadPoolExecutor IMAGE_POOL = createPool(IMAGE_THREADS, "image-%d");
+
+	//suppress instantiation
+	private RequestEngine(){}
+
+	/**
+	 * Queues a request to the database, with the default timeout.
+	 *
+	 * @param work What to do in the background.
+	 * @param priority Position in the queue, relative to other API requests.
+	 * @param callback Executed on the main thread with the result, unless cancelled. May be null.
+	 * @return Handle to wait on or cancel the request.
+	 */
+	static <T> Request<T> api(Request.Work<T> work, Request.Priority priority, @Nullable Callback<T> callback)
+	{
+		return api(work, priority, API_TIMEOUT_MILLIS, callback);
+	}
+
+	/**
+	 * Queues a request to the database.
+	 *
+	 * @param timeoutMillis Connect and read timeout, for requests that are known to be slower or faster than most.
+	 * @see #api(Request.Work, Request.Priority, Callback)
+	 */
+	static <T> Request<T> api(Request.Work<T> work, Request.Priority priority, int timeoutMillis, @Nullable Callback<T> callback)
+	{
+		Request<T> request = new Request<>(work, priority, timeoutMillis, callback);
+		API_POOL.execute(request);
+		return request;
+	}
+
+	/**
+	 * Queues an image download, with the default timeout.
+	 *
+	 * @see #api(Request.Work, Request.Priority, Callback)
+	 */
+	static <T> Request<T> image(Request.Work<T> work, Request.Priority priority, @Nullable Callback<T> callback)
+	{
+		return image(work, priority, IMAGE_TIMEOUT_MILLIS, callback);
+	}
+
+	/**
+	 * Queues an image download.
+	 *
+	 * @see #api(Request.Work, Request.Priority, int, Callback)
+	 */
+	static <T> Request<T> image(Request.Work<T> work, Request.Priority priority, int timeoutMillis, @Nullable Callback<T> callback)
+	{
+		Request<T> request = new Request<>(work, priority, timeoutMillis, callback);
+		IMAGE_POOL.execute(request);
+		return request;
+	}
+
+	/**
+	 * Creates a pool whose idle threads die after a while, since requests come in bursts.
+	 * Requests are passed to {@link ThreadPoolExecutor#execute(Runnable)} directly (not submit), so the
+	 * queue holds the {@link Request}s themselves and can order them.
+	 */
+	private static ThreadPoolExecutor createPool(int threads, String nameFormat)
+	{
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
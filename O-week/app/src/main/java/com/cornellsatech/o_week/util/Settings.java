@@ -3,6 +3,7 @@ package com.cornellsatech.o_week.util;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
@@ -14,15 +15,18 @@ import com.cornellsatech.o_week.models.Event;
 import com.cornellsatech.o_week.models.StudentType;
 import com.google.gson.JsonSyntaxException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Handles all operations involving saving and reading from disk. Every method requires {@link Context}
- * to create a {@link SharedPreferences}. Some of these methods are costly CPU-wise, so use sparingly.
+ * to create a {@link SharedPreferences}. Events are the exception, and are saved in an {@link EventSnapshot}.
+ * Some of these methods are costly CPU-wise, so use sparingly.
  */
 public final class Settings
 {
@@ -32,6 +36,7 @@ public final class Settings
 	private static final String KEY_SELECTED_EVENTS = "selectedEvents";
 	private static final String KEY_CATEGORIES = "categories";
 	private static final String KEY_TIMESTAMP = "timestamp";
+	private static final String KEY_LAST_SYNC = "lastSync";
 	private static final String KEY_STUDENT_TYPE = "studentType";
 	private static final String KEY_COLLEGE_TYPE = "collegeType";
 	private static final String KEY_RESOURCES = "resources";
@@ -77,27 +82,37 @@ public final class Settings
 	}
 
 	/**
-	 * Saves {@link UserData#allEvents} to disk.
+	 * Returns all saved events. If events were saved in the old format (one JSON string per event),
+	 * they are migrated to an {@link EventSnapshot} and removed from preferences.
+	 *
+	 * @return A list of saved events.
 	 */
-	public static void setAllEvents(Context context)
+	public static List<Event> getAllEvents(Context context)
 	{
+		if (EventSnapshot.exists(context))
+		{
+			long startTime = SystemClock.elapsedRealtime();
+			List<Event> allEvents = EventSnapshot.read(context);
+			Log.i(TAG, "Read " + allEvents.size() + " events from snapshot in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+			return allEvents;
+		}
+
 		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-		SharedPreferences.Editor editor = preferences.edit();
-		Set<String> eventStrings = new HashSet<>();
-		for (Event event : UserData.allEvents)
-			eventStrings.add(event.toString());
-		editor.putStringSet(KEY_ALL_EVENTS, eventStrings);
-		editor.apply();
+		if (!preferences.contains(KEY_ALL_EVENTS))
+			return new ArrayList<>();
+		return migrateAllEvents(preferences, context);
 	}
 	/**
-	 * Returns all saved events.
-	 * @return A set of saved events.
+	 * Moves events saved under {@link #KEY_ALL_EVENTS} into an {@link EventSnapshot}. The snapshot is
+	 * read back once so that the cold start cost of both formats can be compared in the logs.
+	 *
+	 * @return Events that were saved in the old format.
 	 */
-	public static Set<Event> getAllEvents(Context context)
+	private static List<Event> migrateAllEvents(SharedPreferences preferences, Context context)
 	{
-		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		long startTime = SystemClock.elapsedRealtime();
 		Set<String> eventStrings = preferences.getStringSet(KEY_ALL_EVENTS, new HashSet<String>());
-		Set<Event> allEvents = new HashSet<>(eventStrings.size());
+		List<Event> allEvents = new ArrayList<>(eventStrings.size());
 		try
 		{
 			for (String eventString : eventStrings)
@@ -107,14 +122,34 @@ public final class Settings
 		{
 			Log.e(TAG, "Could not load events from settings.", e);
 		}
+		long legacyReadTime = SystemClock.elapsedRealtime() - startTime;
+
+		EventSnapshot.write(context, allEvents);
+		startTime = SystemClock.elapsedRealtime();
+		int numSnapshotEvents = EventSnapshot.read(context).size();
+		long snapshotReadTime = SystemClock.elapsedRealtime() - startTime;
+		if (numSnapshotEvents != allEvents.size())
+		{
+			Log.e(TAG, "Snapshot migration lost events, keeping old format.");
+			EventSnapshot.delete(context);
+			return allEvents;
+		}
+
+		Log.i(TAG, "Migrated " + allEvents.size() + " events. Read time: preferences " + legacyReadTime
+				+ "ms, snapshot " + snapshotReadTime + "ms");
+		preferences.edit().remove(KEY_ALL_EVENTS).apply();
 		return allEvents;
 	}
 
 	/**
-	 * Saves the {@link Event#getPk()} of all events in {@link UserData#selectedEvents}.
+	 * Saves the {@link Event#getPk()} of all events in {@link UserData#selectedEvents}. Does nothing
+	 * until {@link UserData#isLoaded()}, since selected events may be missing until then. Changes made
+	 * before then are applied when the catalog loads, and saved the next time this is called.
 	 */
 	public static void setSelectedEvents(Context context)
 	{
+		if (!UserData.isLoaded())
+			return;
 		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
 		SharedPreferences.Editor editor = preferences.edit();
 		Set<String> selectedEventsPks = new HashSet<>(UserData.selectedEvents.size());
@@ -190,6 +225,26 @@ public final class Settings
 		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
 		return preferences.getLong(KEY_TIMESTAMP, 0);  //default version value = 0
 	}
+	/**
+	 * Saves when updates were last downloaded successfully.
+	 *
+	 * @param lastSync Time in epoch millis.
+	 */
+	public static void setLastSync(long lastSync, Context context)
+	{
+		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		SharedPreferences.Editor editor = preferences.edit();
+		editor.putLong(KEY_LAST_SYNC, lastSync);
+		editor.apply();
+	}
+	/**
+	 * Returns when updates were last downloaded successfully, in epoch millis, or 0 if never.
+	 */
+	public static long getLastSync(Context context)
+	{
+		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		return preferences.getLong(KEY_LAST_SYNC, 0);
+	}
 
 	public static void setResources(Map<String, String> resources, Context context)
 	{
@@ -290,6 +345,7 @@ public final class Settings
 					.clear()
 					.putString(KEY_CLEARED_VERSION, versionName)
 					.apply();
+			EventSnapshot.delete(context);
 		}
 		catch (PackageManager.NameNotFoundException e)
 		{
@@ -0,0 +1,287 @@
+package com.cornellsatech.o_week;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link ScheduleLayout} against hand-computed layouts, and against {@link RecursiveLayout}, the
+ * recursion {@link ScheduleFragment} used to draw events with.
+ */
+public class ScheduleLayoutTest
+{
+	private final ScheduleLayout layout = new ScheduleLayout(2f, 10f);
+
+	@Test
+	public void emptyScheduleHasNoBoxes()
+	{
+		assertTrue(layout.layout(new ArrayList<ScheduleLayout.Interval<String>>()).isEmpty());
+	}
+
+	@Test
+	public void chainReusesColumnOfEndedInterval()
+	{
+		List<ScheduleLayout.Box<String>> boxes = layout.layout(intervals("A", 0, 60, "B", 30, 90, "C", 60, 120));
+
+		assertBox(boxes.get(0), "A", 0, 1, 2);
+		assertBox(boxes.get(1), "B", 1, 1, 2);
+		assertBox(boxes.get(2), "C", 0, 1, 2);
+	}
+
+	@Test
+	public void nestedIntervalsShareColumnBesideOuterInterval()
+	{
+		List<ScheduleLayout.Box<String>> boxes = layout.layout(intervals("A", 0, 120, "B", 0, 30, "C", 30, 60));
+
+		assertBox(boxes.get(0), "A", 0, 1, 2);
+		assertBox(boxes.get(1), "B", 1, 1, 2);
+		assertBox(boxes.get(2), "C", 1, 1, 2);
+	}
+
+	@Test
+	public void touchingIntervalsAreSeparateClusters()
+	{
+		List<ScheduleLayout.Box<String>> boxes = layout.layout(intervals("A", 0, 60, "B", 60, 120));
+
+		assertBox(boxes.get(0), "A", 0, 1, 1);
+		assertBox(boxes.get(1), "B", 0, 1, 1);
+	}
+
+	@Test
+	public void intervalWidensOverColumnsFreeOnItsRight()
+	{
+		List<ScheduleLayout.Box<String>> boxes = layout.layout(intervals("A", 0, 120, "B", 0, 60, "C", 0, 60, "D", 60, 120));
+
+		assertBox(boxes.get(0), "A", 0, 1, 3);
+		assertBox(boxes.get(1), "B", 1, 1, 3);
+		assertBox(boxes.get(2), "C", 2, 1, 3);
+		assertBox(boxes.get(3), "D", 1, 2, 3);
+		assertEquals(1f / 3, boxes.get(3).getLeftFraction(), 0.0001f);
+		assertEquals(2f / 3, boxes.get(3).getWidthFraction(), 0.0001f);
+	}
+
+	@Test
+	public void boxPositionScalesWithMinutes()
+	{
+		ScheduleLayout.Box<String> box = layout.layout(intervals("A", 30, 90)).get(0);
+
+		assertEquals(70f, box.getTop(), 0.0001f);
+		assertEquals(120f, box.getHeight(), 0.0001f);
+	}
+
+	@Test
+	public void clusterRangeOfOverlappedCluster()
+	{
+		List<ScheduleLayout.Interval<String>> intervals = intervals("A", 0, 60, "B", 30, 90, "C", 120, 180);
+
+		assertArrayEquals(new int[]{0, 2}, ScheduleLayout.clusterRange(intervals, 40, 50));
+		assertArrayEquals(new int[]{0, 3}, ScheduleLayout.clusterRange(intervals, 60, 150));
+	}
+
+	@Test
+	public void clusterRangeOfGapIsWhereIntervalWouldBeInserted()
+	{
+		List<ScheduleLayout.Interval<String>> intervals = intervals("A", 0, 60, "B", 30, 90, "C", 120, 180);
+
+		assertArrayEquals(new int[]{2, 2}, ScheduleLayout.clusterRange(intervals, 100, 110));
+		assertArrayEquals(new int[]{0, 0}, ScheduleLayout.clusterRange(intervals, -30, -10));
+		assertArrayEquals(new int[]{3, 3}, ScheduleLayout.clusterRange(intervals, 200, 240));
+		//touching both clusters overlaps neither
+		assertArrayEquals(new int[]{2, 2}, ScheduleLayout.clusterRange(intervals, 90, 120));
+		assertArrayEquals(new int[]{0, 0}, ScheduleLayout.clusterRange(new ArrayList<ScheduleLayout.Interval<String>>(), 10, 20));
+	}
+
+	@Test
+	public void clusterRangeTreatsEmptyIntervalAsOneMinute()
+	{
+		List<ScheduleLayout.Interval<String>> intervals = intervals("A", 0, 60, "B", 30, 90, "C", 120, 180);
+
+		assertArrayEquals(new int[]{2, 3}, ScheduleLayout.clusterRange(intervals, 120, 120));
+	}
+
+	/**
+	 * Columns and column counts must be the same as before. Spans may only differ where the old width
+	 * covered a column holding an overlapping event.
+	 */
+	@Test
+	public void matchesRecursiveLayout()
+	{
+		Random random = new Random(1);
+		for (int round = 0; round < 5000; round++)
+		{
+			List<ScheduleLayout.Interval<String>> intervals = randomIntervals(random);
+			List<ScheduleLayout.Box<String>> boxes = layout.layout(intervals);
+			Map<ScheduleLayout.Interval<String>, int[]> expected = new RecursiveLayout().layout(intervals);
+
+			for (int i = 0; i < intervals.size(); i++)
+			{
+				ScheduleLayout.Box<String> box = boxes.get(i);
+				int[] old = expected.get(intervals.get(i));
+				String message = "round " + round + ", interval " + i;
+				assertEquals(message, old[0], box.getColumn());
+				assertEquals(message, old[2], box.getColumnCount());
+				if (box.getSpan() != old[1])
+					assertTrue(message, spanCoversOverlap(intervals, expected, i));
+				for (int j = 0; j < intervals.size(); j++)
+					if (j != i && overlaps(intervals.get(i), intervals.get(j)))
+						assertFalse(message, covers(box.getColumn(), box.getSpan(), boxes.get(j).getColumn()));
+			}
+		}
+	}
+
+	private static boolean spanCoversOverlap(List<ScheduleLayout.Interval<String>> intervals,
+	                                         Map<ScheduleLayout.Interval<String>, int[]> expected, int i)
+	{
+		int[] old = expected.get(intervals.get(i));
+		for (int j = 0; j < intervals.size(); j++)
+			if (j != i && overlaps(intervals.get(i), intervals.get(j))
+					&& covers(old[0], old[1], expected.get(intervals.get(j))[0]))
+				return true;
+		return false;
+	}
+
+	private static boolean covers(int column, int span, int otherColumn)
+	{
+		return otherColumn >= column && otherColumn < column + span;
+	}
+
+	private static boolean overlaps(ScheduleLayout.Interval<?> a, ScheduleLayout.Interval<?> b)
+	{
+		return a.getStart() < b.getEnd() && b.getStart() < a.getEnd();
+	}
+
+	/**
+	 * Up to 8 intervals starting on the quarter hour within 3 hours, lasting up to 90 minutes.
+	 */
+	private static List<ScheduleLayout.Interval<String>> randomIntervals(Random random)
+	{
+		int count = 1 + random.nextInt(8);
+		List<ScheduleLayout.Interval<String>> intervals = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			int start = random.nextInt(12) * 15;
+			intervals.add(new ScheduleLayout.Interval<>(String.valueOf(i), start, start + 15 * (1 + random.nextInt(6))));
+		}
+		Collections.sort(intervals, new Comparator<ScheduleLayout.Interval<String>>()
+		{
+			@Override
+			public int compare(ScheduleLayout.Interval<String> a, ScheduleLayout.Interval<String> b)
+			{
+				return Integer.compare(a.getStart(), b.getStart());
+			}
+		});
+		return intervals;
+	}
+
+	/**
+	 * @param values Triplets of item, start, end.
+	 */
+	private static List<ScheduleLayout.Interval<String>> intervals(Object... values)
+	{
+		List<ScheduleLayout.Interval<String>> intervals = new ArrayList<>();
+		for (int i = 0; i < values.length; i += 3)
+			intervals.add(new ScheduleLayout.Interval<>((String) values[i], (Integer) values[i + 1], (Integer) values[i + 2]));
+		return intervals;
+	}
+
+	private static void assertBox(ScheduleLayout.Box<String> box, String item, int column, int span, int columnCount)
+	{
+		assertEquals(item, box.getItem());
+		assertEquals(item, column, box.getColumn());
+		assertEquals(item, span, box.getSpan());
+		assertEquals(item, columnCount, box.getColumnCount());
+	}
+
+	/**
+	 * The slot recursion {@link ScheduleFragment} drew events with before {@link ScheduleLayout}, without
+	 * the views. Slots are columns, and each event's width extends over the slots on its right it could use.
+	 *
+	 * {@link #results}: Slot, number of slots wide, and number of slots of each interval.
+	 */
+	private static class RecursiveLayout
+	{
+		private final Map<ScheduleLayout.Interval<String>, int[]> results = new IdentityHashMap<>();
+
+		Map<ScheduleLayout.Interval<String>, int[]> layout(List<ScheduleLayout.Interval<String>> sortedByStart)
+		{
+			if (!sortedByStart.isEmpty())
+				draw(1, new HashMap<Integer, ScheduleLayout.Interval<String>>(), new ArrayDeque<>(sortedByStart));
+			return results;
+		}
+
+		/**
+		 * @return The number of slots, followed by the slots the caller should know of.
+		 */
+		private Object[] draw(int numSlots, Map<Integer, ScheduleLayout.Interval<String>> eventForSlot,
+		                      Queue<ScheduleLayout.Interval<String>> events)
+		{
+			ScheduleLayout.Interval<String> event = events.poll();
+			int slot = numSlots;
+			for (int i = 0; i < numSlots; i++)
+				if (canUseSlot(i, event, eventForSlot))
+				{
+					slot = i;
+					break;
+				}
+
+			int newNumSlots = numSlots;
+			Map<Integer, ScheduleLayout.Interval<String>> newEventForSlot = new HashMap<>(eventForSlot);
+			newEventForSlot.put(slot, event);
+			if (slot == numSlots)
+				newNumSlots += 1;
+
+			if (!events.isEmpty())
+			{
+				ScheduleLayout.Interval<String> nextEvent = events.peek();
+				boolean overlaps = false;
+				for (int i = 0; i < newNumSlots; i++)
+					overlaps |= !canUseSlot(i, nextEvent, newEventForSlot);
+				if (overlaps)
+				{
+					Object[] recursiveData = draw(newNumSlots, newEventForSlot, events);
+					newNumSlots = (Integer) recursiveData[0];
+					//noinspection unchecked
+					newEventForSlot = (Map<Integer, ScheduleLayout.Interval<String>>) recursiveData[1];
+				}
+				else
+					draw(1, new HashMap<Integer, ScheduleLayout.Interval<String>>(), events);
+			}
+
+			int occupiedSlots = 1;
+			int nextSlot = slot + 1;
+			while (canUseSlot(nextSlot, event, newEventForSlot) && nextSlot < newNumSlots)
+			{
+				occupiedSlots += 1;
+				nextSlot += 1;
+			}
+			results.put(event, new int[]{slot, occupiedSlots, newNumSlots});
+
+			Map<Integer, ScheduleLayout.Interval<String>> parentEventForSlot = new HashMap<>(eventForSlot);
+			for (Map.Entry<Integer, ScheduleLayout.Interval<String>> entry : newEventForSlot.entrySet())
+				if (canUseSlot(entry.getKey(), event, parentEventForSlot))
+					parentEventForSlot.put(entry.getKey(), entry.getValue());
+			return new Object[]{newNumSlots, parentEventForSlot};
+		}
+
+		private static boolean canUseSlot(int slot, ScheduleLayout.Interval<String> event,
+		                                  Map<Integer, ScheduleLayout.Interval<String>> eventForSlot)
+		{
+			ScheduleLayout.Interval<String> other = eventForSlot.get(slot);
+			return other == null || event.getStart() >= other.getEnd() || other.getStart() >= event.getEnd();
+		}
+	}
+}
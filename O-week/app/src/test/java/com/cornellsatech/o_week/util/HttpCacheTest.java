@@ -0,0 +1,94 @@
+package com.cornellsatech.o_week.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCacheTest
+{
+	private static final long HOUR_MILLIS = 60 * 60 * 1000;
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = folder.newFolder("http");
+	}
+
+	@Test
+	public void trimDeletesOldestFilesFirst() throws IOException
+	{
+		long now = System.currentTimeMillis();
+		File oldest = file("oldest.body", 100, now - 3 * HOUR_MILLIS);
+		File older = file("older.body", 100, now - 2 * HOUR_MILLIS);
+		File old = file("old.body", 100, now - HOUR_MILLIS);
+
+		HttpCache.trim(directory, 150);
+
+		assertFalse(oldest.exists());
+		assertFalse(older.exists());
+		assertTrue(old.exists());
+	}
+
+	@Test
+	public void trimKeepsFilesBeingWritten() throws IOException
+	{
+		long now = System.currentTimeMillis();
+		File temp = file("download.body" + HttpCache.TEMP_SUFFIX, 100, now - 2 * HOUR_MILLIS);
+		File old = file("old.body", 100, now - HOUR_MILLIS);
+
+		HttpCache.trim(directory, 50);
+
+		assertTrue(temp.exists());
+		assertFalse(old.exists());
+	}
+
+	@Test
+	public void trimKeepsFilesJustWritten() throws IOException
+	{
+		long now = System.currentTimeMillis();
+		File old = file("old.body", 100, now - HOUR_MILLIS);
+		File saved = file("saved.body", 100, now);
+
+		HttpCache.trim(directory, 50);
+
+		assertFalse(old.exists());
+		assertTrue(saved.exists());
+	}
+
+	@Test
+	public void trimDoesNothingUnderLimit() throws IOException
+	{
+		File old = file("old.body", 100, System.currentTimeMillis() - HOUR_MILLIS);
+
+		HttpCache.trim(directory, 100);
+
+		assertTrue(old.exists());
+	}
+
+	private File file(String name, int size, long lastModified) throws IOException
+	{
+		File file = new File(directory, name);
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(new byte[size]);
+		}
+		finally
+		{
+			out.close();
+		}
+		assertTrue(file.setLastModified(lastModified));
+		return file;
+	}
+}
@@ -0,0 +1,139 @@
+package com.cornellsatech.o_week.util;
+
+import com.google.common.io.CharStreams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ExecutionException;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs {@link Internet.GET} against a local server, with an {@link HttpCache} in a temporary directory.
+ */
+public class InternetTest
+{
+	private static final String BODY = "{\"timestamp\":1}";
+	private static final String ETAG = "\"v1\"";
+	private static final String LAST_MODIFIED = "Sat, 17 Aug 2019 12:00:00 GMT";
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private final MockWebServer server = new MockWebServer();
+
+	@Before
+	public void setUp() throws IOException
+	{
+		server.start();
+		Internet.setCache(new HttpCache(folder.newFolder("http")));
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		Internet.setCache(null);
+		server.shutdown();
+	}
+
+	@Test
+	public void sendsValidatorsOfCachedResponse() throws Exception
+	{
+		server.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", ETAG).setHeader("Last-Modified", LAST_MODIFIED));
+		server.enqueue(new MockResponse().setBody(BODY));
+
+		get("/version");
+		RecordedRequest first = server.takeRequest();
+		assertNull(first.getHeader("If-None-Match"));
+		assertNull(first.getHeader("If-Modified-Since"));
+
+		get("/version");
+		RecordedRequest second = server.takeRequest();
+		assertEquals(ETAG, second.getHeader("If-None-Match"));
+		assertEquals(LAST_MODIFIED, second.getHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void replaysCachedBodyWhenNotModified() throws Exception
+	{
+		server.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", ETAG));
+		server.enqueue(new MockResponse().setResponseCode(304));
+
+		assertEquals(BODY, get("/version"));
+		assertEquals(BODY, get("/version"));
+	}
+
+	@Test
+	public void doesNotCacheResponsesWithoutValidators() throws Exception
+	{
+		server.enqueue(new MockResponse().setBody(BODY));
+		server.enqueue(new MockResponse().setBody(BODY));
+
+		get("/version");
+		server.takeRequest();
+		get("/version");
+		RecordedRequest second = server.takeRequest();
+		assertNull(second.getHeader("If-None-Match"));
+		assertNull(second.getHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void decodesGzipAndCachesDecodedBody() throws Exception
+	{
+		server.enqueue(new MockResponse().setBody(gzip(BODY)).setHeader("Content-Encoding", "gzip")
+				.setHeader("ETag", ETAG));
+		server.enqueue(new MockResponse().setResponseCode(304));
+
+		assertEquals(BODY, get("/version"));
+		assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+		assertEquals(BODY, get("/version"));
+	}
+
+	@Test
+	public void failsOnErrorResponse() throws Exception
+	{
+		server.enqueue(new MockResponse().setResponseCode(500));
+
+		assertNull(get("/version"));
+	}
+
+	/**
+	 * Runs a GET on this thread.
+	 * @return The body as a String, or null if the request failed.
+	 */
+	private String get(String path) throws ExecutionException, InterruptedException
+	{
+		Request<String> request = new Request<>(new Internet.GET<>(server.url(path).toString(), new Internet.ResponseParser<String>()
+		{
+			@Override
+			public String parse(Reader body) throws IOException
+			{
+				return CharStreams.toString(body);
+			}
+		}), Request.Priority.HIGH, 5_000, null);
+		request.run();
+		return request.get();
+	}
+
+	private static Buffer gzip(String string) throws IOException
+	{
+		Buffer buffer = new Buffer();
+		BufferedSink sink = Okio.buffer(new GzipSink(buffer));
+		sink.writeUtf8(string);
+		sink.close();
+		return buffer;
+	}
+}
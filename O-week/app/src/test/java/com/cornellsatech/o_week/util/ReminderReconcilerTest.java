@@ -0,0 +1,145 @@
+package com.cornellsatech.o_week.util;
+
+import com.cornellsatech.o_week.models.Event;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReminderReconcilerTest
+{
+	private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+	@Test
+	public void unchangedQueueSkipsEveryWrite()
+	{
+		List<ReminderManifest.Entry> queue = queue(entry("A", "Welcome", 1), entry("B", "Lunch", 2));
+
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue, queue(entry("A", "Welcome", 1),
+				entry("B", "Lunch", 2)), 0, false);
+
+		assertFalse(result.isChanged());
+		assertFalse(result.isRearm());
+		assertEquals("A", result.getNext().getPk());
+		assertEquals(2, result.getOperationsSaved());
+	}
+
+	@Test
+	public void addedReminderAfterNextKeepsAlarm()
+	{
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue(entry("A", "Welcome", 1)),
+				queue(entry("A", "Welcome", 1), entry("B", "Lunch", 2)), 0, false);
+
+		assertEquals(1, result.getAdded());
+		assertTrue(result.isChanged());
+		assertFalse(result.isRearm());
+		assertEquals(1, result.getOperationsSaved());
+	}
+
+	@Test
+	public void addedReminderBeforeNextRearms()
+	{
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue(entry("B", "Lunch", 2)),
+				queue(entry("A", "Welcome", 1), entry("B", "Lunch", 2)), 0, false);
+
+		assertEquals(1, result.getAdded());
+		assertTrue(result.isRearm());
+		assertEquals("A", result.getNext().getPk());
+		assertEquals(0, result.getOperationsSaved());
+	}
+
+	@Test
+	public void cancellingLastReminderCancelsAlarm()
+	{
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue(entry("A", "Welcome", 1)),
+				Collections.<ReminderManifest.Entry>emptyList(), 0, false);
+
+		assertEquals(1, result.getCancelled());
+		assertTrue(result.isChanged());
+		assertTrue(result.isRearm());
+		assertNull(result.getNext());
+	}
+
+	@Test
+	public void updatedTextKeepsAlarm()
+	{
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue(entry("A", "Welcome", 1)),
+				queue(entry("A", "Welcome Back", 1)), 0, false);
+
+		assertEquals(1, result.getUpdated());
+		assertEquals(0, result.getAdded());
+		assertEquals(0, result.getCancelled());
+		assertTrue(result.isChanged());
+		assertFalse(result.isRearm());
+	}
+
+	@Test
+	public void updatedTimeRearms()
+	{
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue(entry("A", "Welcome", 1)),
+				queue(entry("A", "Welcome", 3)), 0, false);
+
+		assertEquals(1, result.getUpdated());
+		assertTrue(result.isRearm());
+		assertEquals(3 * HOUR_MILLIS, result.getNext().getFireAt());
+	}
+
+	@Test
+	public void nextSkipsPostedReminders()
+	{
+		List<ReminderManifest.Entry> queue = queue(entry("A", "Welcome", 1), entry("B", "Lunch", 2));
+
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue, queue, HOUR_MILLIS, false);
+
+		assertEquals("B", result.getNext().getPk());
+		assertNull(ReminderReconciler.firstAfter(queue, 2 * HOUR_MILLIS));
+	}
+
+	@Test
+	public void forcedRearmSetsUnchangedAlarm()
+	{
+		List<ReminderManifest.Entry> queue = queue(entry("A", "Welcome", 1));
+
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(queue, queue, 0, true);
+
+		assertFalse(result.isChanged());
+		assertTrue(result.isRearm());
+		assertEquals(1, result.getOperationsSaved());
+	}
+
+	@Test
+	public void forcedRearmWithEmptyQueuesDoesNothing()
+	{
+		List<ReminderManifest.Entry> empty = Collections.emptyList();
+
+		ReminderReconciler.Result result = ReminderReconciler.reconcile(empty, empty, 0, true);
+
+		assertFalse(result.isRearm());
+		assertNull(result.getNext());
+	}
+
+	/**
+	 * @param fireAtHours When the reminder is due, in hours after the epoch. The event starts an hour later.
+	 */
+	private static ReminderManifest.Entry entry(String pk, String name, long fireAtHours)
+	{
+		long fireAt = fireAtHours * HOUR_MILLIS;
+		Event event = new Event(pk, name, "", "", "", "", "Ithaca", 0, 0, fireAt + HOUR_MILLIS,
+				fireAt + 2 * HOUR_MILLIS, new ArrayList<String>(), false, false);
+		return new ReminderManifest.Entry(event, fireAt);
+	}
+
+	private static List<ReminderManifest.Entry> queue(ReminderManifest.Entry... entries)
+	{
+		List<ReminderManifest.Entry> queue = new ArrayList<>();
+		Collections.addAll(queue, entries);
+		return queue;
+	}
+}